@@ -0,0 +1,145 @@
+package ar.qubi.snmp.api;
+
+import java.util.Arrays;
+
+/**
+ * Compact object identifier: the arcs as an {@code int[]} (unsigned 32-bit) with a cached hash.
+ * The dotted form is rendered on first {@link #toString()} and cached, so an OID interned in
+ * {@link OidTable} is rendered once for every device and trap that shares it.
+ */
+public final class Oid implements Comparable<Oid> {
+  private final int[] arcs;
+  private final int hash;
+  // Interned parent whose dotted form is reused when rendering this OID, or null
+  private final Oid parent;
+  private String dotted;
+
+  private Oid(int[] arcs, String dotted) {
+    this(arcs, dotted, null);
+  }
+
+  private Oid(int[] arcs, String dotted, Oid parent) {
+    this.arcs = arcs;
+    this.hash = Arrays.hashCode(arcs);
+    this.parent = parent;
+    this.dotted = dotted;
+  }
+
+  public static Oid of(int... arcs) {
+    return new Oid(arcs.clone(), null);
+  }
+
+  /** Wraps {@code arcs} without copying; the caller must not modify the array afterwards. */
+  public static Oid wrap(int[] arcs) {
+    return new Oid(arcs, null);
+  }
+
+  /**
+   * Wraps {@code arcs}, whose first {@code arcs.length - 1} arcs equal {@code parent}, without
+   * copying. {@link #parent()} returns {@code parent} and the dotted form extends the parent's.
+   */
+  static Oid wrap(Oid parent, int[] arcs) {
+    return new Oid(arcs, null, parent);
+  }
+
+  /** Parses a dotted OID such as {@code 1.3.6.1.2.1.1.3.0}; a leading dot is accepted. */
+  public static Oid parse(String dotted) {
+    int len = dotted.length();
+    int start = len > 0 && dotted.charAt(0) == '.' ? 1 : 0;
+    int count = start < len ? 1 : 0;
+    for (int i = start; i < len; i++) {
+      if (dotted.charAt(i) == '.') count++;
+    }
+    int[] arcs = new int[count];
+    long arc = 0;
+    int n = 0;
+    boolean digits = false;
+    for (int i = start; i <= len; i++) {
+      char c = i < len ? dotted.charAt(i) : '.';
+      if (c == '.') {
+        if (!digits) throw new IllegalArgumentException("Invalid OID: " + dotted);
+        arcs[n++] = (int) arc;
+        arc = 0;
+        digits = false;
+      } else if (c >= '0' && c <= '9') {
+        arc = arc * 10 + (c - '0');
+        if (arc > 0xFFFFFFFFL) throw new IllegalArgumentException("OID arc out of range: " + dotted);
+        digits = true;
+      } else {
+        throw new IllegalArgumentException("Invalid OID: " + dotted);
+      }
+    }
+    return new Oid(arcs, start == 0 ? dotted : null);
+  }
+
+  public int size() { return arcs.length; }
+
+  public int get(int index) { return arcs[index]; }
+
+  public long getUnsigned(int index) { return arcs[index] & 0xFFFFFFFFL; }
+
+  public int last() { return arcs[arcs.length - 1]; }
+
+  /** The backing array, shared; must not be modified. */
+  public int[] arcs() { return arcs; }
+
+  public boolean startsWith(Oid prefix) {
+    return prefix.arcs.length <= arcs.length
+        && Arrays.equals(arcs, 0, prefix.arcs.length, prefix.arcs, 0, prefix.arcs.length);
+  }
+
+  /** The first {@code length} arcs. */
+  public Oid prefix(int length) {
+    if (length == arcs.length) return this;
+    if (parent != null && length == arcs.length - 1) return parent;
+    return new Oid(Arrays.copyOf(arcs, length), null);
+  }
+
+  public Oid parent() {
+    return prefix(arcs.length - 1);
+  }
+
+  public Oid child(int arc) {
+    int[] child = Arrays.copyOf(arcs, arcs.length + 1);
+    child[arcs.length] = arc;
+    return new Oid(child, null);
+  }
+
+  /** Lexicographic order on unsigned arcs, which is the SNMP walk order. */
+  @Override
+  public int compareTo(Oid other) {
+    int n = Math.min(arcs.length, other.arcs.length);
+    for (int i = 0; i < n; i++) {
+      int c = Integer.compareUnsigned(arcs[i], other.arcs[i]);
+      if (c != 0) return c;
+    }
+    return Integer.compare(arcs.length, other.arcs.length);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    return o instanceof Oid other && hash == other.hash && Arrays.equals(arcs, other.arcs);
+  }
+
+  @Override
+  public int hashCode() { return hash; }
+
+  @Override
+  public String toString() {
+    String s = dotted;
+    if (s == null && parent != null) {
+      s = parent.toString() + '.' + (last() & 0xFFFFFFFFL);
+      dotted = s;
+    } else if (s == null) {
+      StringBuilder sb = new StringBuilder(arcs.length * 4);
+      for (int i = 0; i < arcs.length; i++) {
+        if (i > 0) sb.append('.');
+        sb.append(arcs[i] & 0xFFFFFFFFL);
+      }
+      s = sb.toString();
+      dotted = s;
+    }
+    return s;
+  }
+}
@@ -0,0 +1,66 @@
+package ar.qubi.snmp.api;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded intern table for {@link Oid}s. Configured OIDs are interned whole; decoded instance
+ * OIDs only intern their parent (the column, for a table row), so polling the same columns on
+ * many devices keeps one instance and one rendered prefix per column while the rows themselves
+ * stay garbage. Once full, new OIDs are returned as-is instead of evicting.
+ */
+public final class OidTable {
+  /** Table shared by the client, the trap filters and the MIB lookup. */
+  public static final OidTable SHARED = new OidTable(1 << 16);
+
+  private final int maxSize;
+  private final ConcurrentHashMap<Oid, Oid> oids = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, Oid> parsed = new ConcurrentHashMap<>();
+
+  public OidTable(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  public Oid intern(Oid oid) {
+    Oid existing = oids.get(oid);
+    if (existing != null) return existing;
+    if (oids.size() >= maxSize) return oid;
+    existing = oids.putIfAbsent(oid, oid);
+    return existing != null ? existing : oid;
+  }
+
+  /**
+   * Wraps decoded arcs without copying, interning only their parent. The instance itself is not
+   * stored, so walk rows and other per-device OIDs cannot fill the table.
+   */
+  public Oid instance(int[] arcs) {
+    if (arcs.length < 2) return Oid.wrap(arcs);
+    Oid parent = intern(Oid.wrap(Arrays.copyOf(arcs, arcs.length - 1)));
+    return Oid.wrap(parent, arcs);
+  }
+
+  /** Parses and interns a configured dotted OID, remembering the string so it is only parsed once. */
+  public Oid parse(String dotted) {
+    Oid oid = parsed.get(dotted);
+    if (oid != null) return oid;
+    oid = intern(Oid.parse(dotted));
+    if (parsed.size() < maxSize) {
+      parsed.putIfAbsent(dotted, oid);
+    }
+    return oid;
+  }
+
+  /**
+   * The interned OID for {@code dotted} if it is already known, otherwise a parsed one that is
+   * not added. For OIDs received from the network, such as trap OIDs.
+   */
+  public Oid lookup(String dotted) {
+    Oid oid = parsed.get(dotted);
+    if (oid != null) return oid;
+    oid = Oid.parse(dotted);
+    Oid existing = oids.get(oid);
+    return existing != null ? existing : oid;
+  }
+
+  public int size() { return oids.size(); }
+}
@@ -0,0 +1,48 @@
+package ar.qubi.snmp.api;
+
+/** SMI syntax of a variable binding value, with its BER tag. */
+public enum SmiSyntax {
+  INTEGER(0x02),
+  OCTET_STRING(0x04),
+  NULL(0x05),
+  OBJECT_IDENTIFIER(0x06),
+  IP_ADDRESS(0x40),
+  COUNTER32(0x41),
+  GAUGE32(0x42),
+  TIMETICKS(0x43),
+  OPAQUE(0x44),
+  COUNTER64(0x46),
+  NO_SUCH_OBJECT(0x80),
+  NO_SUCH_INSTANCE(0x81),
+  END_OF_MIB_VIEW(0x82),
+  /** Any other tag (BIT STRING, NsapAddress, UInteger32, ...); the value keeps its raw BER encoding. */
+  UNKNOWN(-1);
+
+  private static final SmiSyntax[] BY_TAG = new SmiSyntax[0x83];
+  static {
+    for (SmiSyntax s : values()) {
+      if (s.tag >= 0) BY_TAG[s.tag] = s;
+    }
+  }
+
+  private final int tag;
+
+  SmiSyntax(int tag) { this.tag = tag; }
+
+  public int tag() { return tag; }
+
+  public boolean isNumeric() {
+    return this == INTEGER || this == COUNTER32 || this == GAUGE32 || this == TIMETICKS || this == COUNTER64;
+  }
+
+  /** True for the v2 exception values (noSuchObject, noSuchInstance, endOfMibView). */
+  public boolean isException() {
+    return tag >= 0x80;
+  }
+
+  /** The syntax for a BER tag, or {@link #UNKNOWN} for tags not listed here. */
+  public static SmiSyntax fromTag(int tag) {
+    SmiSyntax s = tag >= 0 && tag < BY_TAG.length ? BY_TAG[tag] : null;
+    return s != null ? s : UNKNOWN;
+  }
+}
@@ -0,0 +1,5 @@
+package ar.qubi.snmp.api;
+
+public record SnmpStreamResult(long rows, long durationMs, String error) {
+  public boolean ok(){ return error == null; }
+}
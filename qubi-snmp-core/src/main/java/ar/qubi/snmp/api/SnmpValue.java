@@ -0,0 +1,196 @@
+package ar.qubi.snmp.api;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Typed value of a variable binding. Numbers stay primitive and octet strings / OIDs keep the
+ * decoded array; the string form is rendered on the first {@link #toString()} and cached, using
+ * the same formats as SNMP4J's {@code Variable.toString()}.
+ * The arrays returned by {@link #bytes()} and {@link #oid()} are shared and must not be modified.
+ */
+public final class SnmpValue {
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final SmiSyntax syntax;
+  private final long number;
+  private final byte[] bytes;
+  private final int[] oid;
+  private String text;
+
+  private SnmpValue(SmiSyntax syntax, long number, byte[] bytes, int[] oid, String text) {
+    this.syntax = syntax;
+    this.number = number;
+    this.bytes = bytes;
+    this.oid = oid;
+    this.text = text;
+  }
+
+  public static SnmpValue ofInteger(int value) { return new SnmpValue(SmiSyntax.INTEGER, value, null, null, null); }
+
+  /** Counter32, Gauge32, TimeTicks or Counter64; unsigned 32-bit values are passed widened to long. */
+  public static SnmpValue ofUnsigned(SmiSyntax syntax, long value) {
+    if (!syntax.isNumeric() || syntax == SmiSyntax.INTEGER) {
+      throw new IllegalArgumentException("Not an unsigned syntax: " + syntax);
+    }
+    return new SnmpValue(syntax, value, null, null, null);
+  }
+
+  public static SnmpValue ofOctets(byte[] value) { return new SnmpValue(SmiSyntax.OCTET_STRING, 0, value, null, null); }
+
+  public static SnmpValue ofOpaque(byte[] value) { return new SnmpValue(SmiSyntax.OPAQUE, 0, value, null, null); }
+
+  public static SnmpValue ofIpAddress(byte[] address) { return new SnmpValue(SmiSyntax.IP_ADDRESS, 0, address, null, null); }
+
+  public static SnmpValue ofOid(int[] value) { return new SnmpValue(SmiSyntax.OBJECT_IDENTIFIER, 0, null, value, null); }
+
+  /**
+   * A value of a syntax this library does not model, kept as its complete BER encoding (tag,
+   * length and contents); the tag is the first byte.
+   */
+  public static SnmpValue ofUnknown(byte[] ber) { return new SnmpValue(SmiSyntax.UNKNOWN, 0, ber, null, null); }
+
+  /** NULL or one of the v2 exception values. */
+  public static SnmpValue ofNull(SmiSyntax syntax) {
+    if (syntax != SmiSyntax.NULL && !syntax.isException()) {
+      throw new IllegalArgumentException("Not a null syntax: " + syntax);
+    }
+    return new SnmpValue(syntax, 0, null, null, null);
+  }
+
+  /** A value that is only known in its rendered form, kept as an octet string. */
+  public static SnmpValue ofString(String value) {
+    return new SnmpValue(SmiSyntax.OCTET_STRING, 0, value.getBytes(StandardCharsets.UTF_8), null, value);
+  }
+
+  public SmiSyntax syntax() { return syntax; }
+
+  public boolean isNumeric() { return syntax.isNumeric(); }
+
+  public boolean isException() { return syntax.isException(); }
+
+  /** The numeric value; Counter64 values above {@link Long#MAX_VALUE} are returned as negative (unsigned) longs. */
+  public long toLong() {
+    if (!syntax.isNumeric()) throw new UnsupportedOperationException(syntax + " is not numeric");
+    return number;
+  }
+
+  public int toInt() {
+    return (int) toLong();
+  }
+
+  public byte[] bytes() { return bytes; }
+
+  public int[] oid() { return oid; }
+
+  public Oid toOid() {
+    if (oid == null) throw new UnsupportedOperationException(syntax + " is not an OBJECT IDENTIFIER");
+    return Oid.wrap(oid);
+  }
+
+  @Override
+  public String toString() {
+    String s = text;
+    if (s == null) {
+      s = render();
+      text = s;
+    }
+    return s;
+  }
+
+  private String render() {
+    switch (syntax) {
+      case INTEGER:
+      case COUNTER32:
+      case GAUGE32:
+        return Long.toString(number);
+      case COUNTER64:
+        return Long.toUnsignedString(number);
+      case TIMETICKS:
+        return renderTimeTicks(number);
+      case OCTET_STRING:
+        return isPrintable(bytes) ? new String(bytes, StandardCharsets.ISO_8859_1) : toHex(bytes);
+      case OPAQUE:
+      case UNKNOWN:
+        return toHex(bytes);
+      case IP_ADDRESS:
+        return renderAddress(bytes);
+      case OBJECT_IDENTIFIER:
+        return toOid().toString();
+      case NULL:
+        return "Null";
+      case NO_SUCH_OBJECT:
+        return "noSuchObject";
+      case NO_SUCH_INSTANCE:
+        return "noSuchInstance";
+      case END_OF_MIB_VIEW:
+        return "endOfMibView";
+      default:
+        throw new IllegalStateException("Unhandled syntax " + syntax);
+    }
+  }
+
+  // Same format as SNMP4J TimeTicks: "[N day(s), ]h:mm:ss.cc"
+  private static String renderTimeTicks(long ticks) {
+    long days = ticks / 8640000;
+    long hours = (ticks / 360000) % 24;
+    long minutes = (ticks / 6000) % 60;
+    long seconds = (ticks / 100) % 60;
+    long hundredths = ticks % 100;
+    StringBuilder sb = new StringBuilder(24);
+    if (days == 1) {
+      sb.append("1 day, ");
+    } else if (days > 1) {
+      sb.append(days).append(" days, ");
+    }
+    sb.append(hours).append(':');
+    if (minutes < 10) sb.append('0');
+    sb.append(minutes).append(':');
+    if (seconds < 10) sb.append('0');
+    sb.append(seconds).append('.');
+    if (hundredths < 10) sb.append('0');
+    return sb.append(hundredths).toString();
+  }
+
+  private static boolean isPrintable(byte[] value) {
+    for (byte b : value) {
+      int v = b & 0xFF;
+      char c = (char) v;
+      if ((Character.isISOControl(c) || v >= 0x80) && (!Character.isWhitespace(c) || (v >= 0x1C && v <= 0x1F))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String toHex(byte[] value) {
+    if (value.length == 0) return "";
+    char[] out = new char[value.length * 3 - 1];
+    for (int i = 0, j = 0; i < value.length; i++) {
+      if (i > 0) out[j++] = ':';
+      out[j++] = HEX[(value[i] >> 4) & 0xF];
+      out[j++] = HEX[value[i] & 0xF];
+    }
+    return new String(out);
+  }
+
+  private static String renderAddress(byte[] address) {
+    if (address.length != 4) return toHex(address);
+    return (address[0] & 0xFF) + "." + (address[1] & 0xFF) + "." + (address[2] & 0xFF) + "." + (address[3] & 0xFF);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof SnmpValue other)) return false;
+    return syntax == other.syntax && number == other.number
+        && Arrays.equals(bytes, other.bytes) && Arrays.equals(oid, other.oid);
+  }
+
+  @Override
+  public int hashCode() {
+    int h = syntax.hashCode() * 31 + Long.hashCode(number);
+    h = h * 31 + Arrays.hashCode(bytes);
+    return h * 31 + Arrays.hashCode(oid);
+  }
+}
@@ -2,15 +2,99 @@ package ar.qubi.snmp.api;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Objects;
 import java.util.function.Supplier;
 import ar.qubi.snmp.mib.MibLookup;
 
-public record TrapMessage(
-    Instant receivedAt,
-    String remoteAddress,
-    String version,
-    String communityOrUser,
-    String trapOid,
-    List<Var> variables,
-    Supplier<MibLookup> mib
-) {}
+/**
+ * A received trap or inform. Subclasses may decode lazily by overriding the accessors.
+ * {@link #equals(Object)}, {@link #hashCode()} and {@link #toString()} read every component, so
+ * they decode a lazy message in full.
+ */
+public class TrapMessage {
+  private final Instant receivedAt;
+  private final String remoteAddress;
+  private final String version;
+  private final String communityOrUser;
+  private final String trapOid;
+  private final List<Var> variables;
+  private final Supplier<MibLookup> mib;
+
+  public TrapMessage(
+      Instant receivedAt,
+      String remoteAddress,
+      String version,
+      String communityOrUser,
+      String trapOid,
+      List<Var> variables,
+      Supplier<MibLookup> mib
+  ) {
+    this.receivedAt = receivedAt;
+    this.remoteAddress = remoteAddress;
+    this.version = version;
+    this.communityOrUser = communityOrUser;
+    this.trapOid = trapOid;
+    this.variables = variables;
+    this.mib = mib;
+  }
+
+  /** For subclasses that compute the other components on first access. */
+  protected TrapMessage(long receivedAtMillis, String version, Supplier<MibLookup> mib) {
+    this.receivedAt = Instant.ofEpochMilli(receivedAtMillis);
+    this.remoteAddress = null;
+    this.version = version;
+    this.communityOrUser = null;
+    this.trapOid = null;
+    this.variables = null;
+    this.mib = mib;
+  }
+
+  public Instant receivedAt() { return receivedAt; }
+
+  /** {@link #receivedAt()} in epoch milliseconds, or 0 if it is null. */
+  public long receivedAtMillis() { return receivedAt != null ? receivedAt.toEpochMilli() : 0; }
+
+  /** Sender as {@code host:port}. */
+  public String remoteAddress() { return remoteAddress; }
+
+  /** "1", "2c" or "3". */
+  public String version() { return version; }
+
+  /** Community for v1/v2c, security name for v3. */
+  public String communityOrUser() { return communityOrUser; }
+
+  public String trapOid() { return trapOid; }
+
+  public List<Var> variables() { return variables; }
+
+  public Supplier<MibLookup> mib() { return mib; }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof TrapMessage other)) return false;
+    return Objects.equals(receivedAt(), other.receivedAt())
+        && Objects.equals(remoteAddress(), other.remoteAddress())
+        && Objects.equals(version(), other.version())
+        && Objects.equals(communityOrUser(), other.communityOrUser())
+        && Objects.equals(trapOid(), other.trapOid())
+        && Objects.equals(variables(), other.variables())
+        && Objects.equals(mib(), other.mib());
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(receivedAt(), remoteAddress(), version(), communityOrUser(), trapOid(), variables(), mib());
+  }
+
+  @Override
+  public String toString() {
+    return "TrapMessage[receivedAt=" + receivedAt()
+        + ", remoteAddress=" + remoteAddress()
+        + ", version=" + version()
+        + ", communityOrUser=" + communityOrUser()
+        + ", trapOid=" + trapOid()
+        + ", variables=" + variables()
+        + ", mib=" + mib() + "]";
+  }
+}
@@ -1,2 +1,17 @@
 package ar.qubi.snmp.api;
-public record Var(String oid, String valueAsString) {}
+
+public record Var(Oid name, SnmpValue value) {
+  public Var(String oid, SnmpValue value) {
+    this(OidTable.SHARED.parse(oid), value);
+  }
+
+  public Var(String oid, String valueAsString) {
+    this(oid, SnmpValue.ofString(valueAsString));
+  }
+
+  /** Dotted OID, rendered once per interned {@link Oid}. */
+  public String oid() { return name.toString(); }
+
+  /** Rendered on first use and cached by the value. */
+  public String valueAsString() { return value.toString(); }
+}
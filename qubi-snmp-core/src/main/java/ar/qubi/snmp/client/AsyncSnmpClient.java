@@ -0,0 +1,53 @@
+package ar.qubi.snmp.client;
+
+import ar.qubi.snmp.api.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking variant of {@link SnmpClient}.
+ * Every request is sent on the shared transport and the returned future is completed
+ * from the SNMP4J listener thread when the response (or the timeout) arrives, so no
+ * caller thread is parked while a request is outstanding.
+ * The futures never complete exceptionally: failures are reported through
+ * {@link SnmpResult#error()} / {@link SnmpWalkResult#error()} like the blocking API.
+ * Dependent stages run on the transport thread; use the {@code *Async} stage methods
+ * of {@link CompletableFuture} for anything slow.
+ */
+public interface AsyncSnmpClient extends SnmpClient {
+  CompletableFuture<SnmpResult> getAsync(TargetSpec target, String... oids);
+  CompletableFuture<SnmpResult> getNextAsync(TargetSpec target, String... oids);
+  CompletableFuture<SnmpResult> bulkAsync(TargetSpec target, int nonRepeaters, int maxRepetitions, String... oids);
+  CompletableFuture<SnmpWalkResult> walkAsync(TargetSpec target, String rootOid);
+
+  /**
+   * Streams the subtrees under {@code rootOids} into {@code sink} without materializing them.
+   * Each root is walked by its own chain of GETBULK requests (GETNEXT for v1) and the chains
+   * run in parallel; calls to {@code sink} are serialized. The result carries the row count
+   * and the first error, if any.
+   */
+  CompletableFuture<SnmpStreamResult> walkAsync(TargetSpec target, List<String> rootOids, int maxRepetitions,
+                                                Consumer<Var> sink);
+
+  @Override
+  default SnmpResult get(TargetSpec target, String... oids) {
+    return getAsync(target, oids).join();
+  }
+
+  @Override
+  default SnmpResult getNext(TargetSpec target, String... oids) {
+    return getNextAsync(target, oids).join();
+  }
+
+  @Override
+  default SnmpResult bulk(TargetSpec target, int nonRepeaters, int maxRepetitions, String... oids) {
+    return bulkAsync(target, nonRepeaters, maxRepetitions, oids).join();
+  }
+
+  @Override
+  default SnmpWalkResult walk(TargetSpec target, String rootOid) {
+    return walkAsync(target, rootOid).join();
+  }
+}
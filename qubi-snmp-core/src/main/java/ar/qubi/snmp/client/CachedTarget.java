@@ -0,0 +1,51 @@
+package ar.qubi.snmp.client;
+
+import org.snmp4j.Target;
+import org.snmp4j.TransportMapping;
+
+/** A resolved SNMP4J target, shared by every request to the same {@link ar.qubi.snmp.api.TargetSpec}. */
+final class CachedTarget {
+  final Target target;
+  // Null unless adaptive timeouts are enabled
+  final RttEstimator rtt;
+  // Socket all requests to this target are sent from
+  final TransportMapping<?> transport;
+
+  // PDU sizes learned from tooBig answers; they only ever shrink
+  private volatile int maxVarbinds = Integer.MAX_VALUE;
+  private volatile int maxRepetitions = Integer.MAX_VALUE;
+
+  CachedTarget(Target target, RttEstimator rtt, TransportMapping<?> transport) {
+    this.target = target;
+    this.rtt = rtt;
+    this.transport = transport;
+  }
+
+  /**
+   * Feeds the outcome of one request into the estimator. Concurrent requests to the same
+   * target share the {@link Target}, so they all pick up the new timeout.
+   */
+  void record(long elapsedMs, long timeoutUsedMs, boolean answered) {
+    if (rtt == null) {
+      return;
+    }
+    if (!answered) {
+      target.setTimeout(rtt.backoff());
+    } else if (elapsedMs < timeoutUsedMs) {
+      // Slower answers came after a retransmission and cannot be attributed to one attempt
+      target.setTimeout(rtt.sample(elapsedMs));
+    }
+  }
+
+  int maxVarbinds() { return maxVarbinds; }
+
+  int maxRepetitions() { return maxRepetitions; }
+
+  synchronized void learnMaxVarbinds(int varbinds) {
+    maxVarbinds = Math.max(1, Math.min(maxVarbinds, varbinds));
+  }
+
+  synchronized void learnMaxRepetitions(int repetitions) {
+    maxRepetitions = Math.max(1, Math.min(maxRepetitions, repetitions));
+  }
+}
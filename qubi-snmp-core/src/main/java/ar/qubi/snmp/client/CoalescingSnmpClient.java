@@ -0,0 +1,217 @@
+package ar.qubi.snmp.client;
+
+import ar.qubi.snmp.api.*;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Merges GET requests to the same {@link TargetSpec} issued within {@code windowMs} into a single
+ * PDU of at most {@code maxVarbinds} bindings, then hands each caller the slice of the response
+ * that matches its own OIDs. A batch is sent when the window closes or as soon as it is full.
+ * GETNEXT, GETBULK, walks and SNMPv1 targets (where one bad OID fails the whole PDU) go straight
+ * to the delegate.
+ */
+public class CoalescingSnmpClient implements AsyncSnmpClient, MeterBinder, Closeable {
+  private final AsyncSnmpClient delegate;
+  private final long windowMs;
+  private final int maxVarbinds;
+  private final ScheduledExecutorService timer;
+  private final ConcurrentHashMap<TargetSpec, Batch> open = new ConcurrentHashMap<>();
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder pdus = new LongAdder();
+
+  public CoalescingSnmpClient(AsyncSnmpClient delegate, long windowMs, int maxVarbinds) {
+    this.delegate = delegate;
+    this.windowMs = Math.max(0, windowMs);
+    this.maxVarbinds = Math.max(1, maxVarbinds);
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread t = new Thread(r, "qubi-snmp-coalescer");
+      t.setDaemon(true);
+      return t;
+    });
+    executor.setRemoveOnCancelPolicy(true);
+    this.timer = executor;
+  }
+
+  @Override
+  public CompletableFuture<SnmpResult> getAsync(TargetSpec target, String... oids) {
+    if (oids.length >= maxVarbinds || "1".equals(target.version())) {
+      return delegate.getAsync(target, oids);
+    }
+    // The delegate parses the whole merged PDU up front, so a bad OID must fail here, alone
+    for (String oid : oids) {
+      try {
+        OidTable.SHARED.parse(oid);
+      } catch (IllegalArgumentException e) {
+        return CompletableFuture.completedFuture(new SnmpResult(List.of(), 0, "Request error: " + e.getMessage()));
+      }
+    }
+    requests.increment();
+    while (true) {
+      Batch batch = open.computeIfAbsent(target, Batch::new);
+      CompletableFuture<SnmpResult> result = batch.add(oids);
+      if (result != null) {
+        return result;
+      }
+      // That batch was already sent; start a new one
+      open.remove(target, batch);
+    }
+  }
+
+  @Override
+  public CompletableFuture<SnmpResult> getNextAsync(TargetSpec target, String... oids) {
+    return delegate.getNextAsync(target, oids);
+  }
+
+  @Override
+  public CompletableFuture<SnmpResult> bulkAsync(TargetSpec target, int nonRepeaters, int maxRepetitions, String... oids) {
+    return delegate.bulkAsync(target, nonRepeaters, maxRepetitions, oids);
+  }
+
+  @Override
+  public CompletableFuture<SnmpWalkResult> walkAsync(TargetSpec target, String rootOid) {
+    return delegate.walkAsync(target, rootOid);
+  }
+
+  @Override
+  public CompletableFuture<SnmpStreamResult> walkAsync(TargetSpec target, List<String> rootOids, int maxRepetitions,
+                                                       Consumer<Var> sink) {
+    return delegate.walkAsync(target, rootOids, maxRepetitions, sink);
+  }
+
+  /** Caller GET requests merged so far. */
+  public long coalescedRequests() { return requests.sum(); }
+
+  /** PDUs actually sent for those requests. */
+  public long sentPdus() { return pdus.sum(); }
+
+  public AsyncSnmpClient getDelegate() { return delegate; }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    if (delegate instanceof MeterBinder binder) {
+      binder.bindTo(registry);
+    }
+    FunctionCounter.builder("qubi.snmp.client.coalesced.requests", this, CoalescingSnmpClient::coalescedRequests)
+        .register(registry);
+    FunctionCounter.builder("qubi.snmp.client.coalesced.pdus", this, CoalescingSnmpClient::sentPdus)
+        .register(registry);
+  }
+
+  @Override
+  public void close() throws IOException {
+    timer.shutdownNow();
+    for (Batch batch : open.values()) {
+      batch.send();
+    }
+    if (delegate instanceof Closeable closeable) {
+      closeable.close();
+    }
+  }
+
+  private final class Batch {
+    private final TargetSpec target;
+    // Guarded by this
+    private final List<String> oids = new ArrayList<>();
+    private final List<Member> members = new ArrayList<>();
+    private boolean sent;
+    private ScheduledFuture<?> flush;
+
+    Batch(TargetSpec target) {
+      this.target = target;
+    }
+
+    /** Adds the OIDs to this batch, or returns null if it was already sent or has no room left. */
+    CompletableFuture<SnmpResult> add(String[] more) {
+      CompletableFuture<SnmpResult> result;
+      boolean full;
+      synchronized (this) {
+        if (sent) {
+          return null;
+        }
+        if (oids.size() + more.length > maxVarbinds) {
+          full = true;
+          result = null;
+        } else {
+          Member member = new Member(oids.size(), more.length, System.currentTimeMillis());
+          members.add(member);
+          oids.addAll(List.of(more));
+          full = oids.size() == maxVarbinds;
+          result = member.result;
+          if (flush == null && !full) {
+            flush = timer.schedule(this::send, windowMs, TimeUnit.MILLISECONDS);
+          }
+        }
+      }
+      if (full) {
+        send();
+      }
+      return result;
+    }
+
+    void send() {
+      String[] request;
+      List<Member> waiting;
+      synchronized (this) {
+        if (sent) {
+          return;
+        }
+        sent = true;
+        if (flush != null) {
+          flush.cancel(false);
+        }
+        request = oids.toArray(new String[0]);
+        waiting = members;
+      }
+      open.remove(target, this);
+      if (waiting.isEmpty()) {
+        return;
+      }
+      pdus.increment();
+      delegate.getAsync(target, request).whenComplete((response, error) -> {
+        long now = System.currentTimeMillis();
+        for (Member member : waiting) {
+          member.result.complete(slice(response, error, member, request.length, now));
+        }
+      });
+    }
+
+    private SnmpResult slice(SnmpResult response, Throwable error, Member member, int requested, long now) {
+      long duration = now - member.startedAt;
+      if (error != null) {
+        return new SnmpResult(List.of(), duration, "IO Error: " + error.getMessage());
+      }
+      if (!response.ok()) {
+        return new SnmpResult(List.of(), duration, response.error());
+      }
+      if (response.vars().size() != requested) {
+        return new SnmpResult(List.of(), duration,
+            "Unexpected response size " + response.vars().size() + " for " + requested + " coalesced OIDs");
+      }
+      return new SnmpResult(List.copyOf(response.vars().subList(member.offset, member.offset + member.count)),
+          duration, null);
+    }
+  }
+
+  private static final class Member {
+    final int offset;
+    final int count;
+    final long startedAt;
+    final CompletableFuture<SnmpResult> result = new CompletableFuture<>();
+
+    Member(int offset, int count, long startedAt) {
+      this.offset = offset;
+      this.count = count;
+      this.startedAt = startedAt;
+    }
+  }
+}
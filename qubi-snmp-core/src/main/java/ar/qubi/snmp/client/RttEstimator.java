@@ -0,0 +1,51 @@
+package ar.qubi.snmp.client;
+
+/**
+ * Per-target retransmission timeout, estimated like TCP (RFC 6298):
+ * {@code RTO = SRTT + 4 * RTTVAR}, clamped to {@code [minTimeoutMs, maxTimeoutMs]},
+ * doubled on every timeout until the next valid sample.
+ */
+final class RttEstimator {
+  private final long minTimeoutMs;
+  private final long maxTimeoutMs;
+
+  // Guarded by this
+  private double srtt = -1;
+  private double rttvar;
+  private long rto;
+
+  RttEstimator(long initialTimeoutMs, long minTimeoutMs, long maxTimeoutMs) {
+    this.minTimeoutMs = Math.max(1, minTimeoutMs);
+    this.maxTimeoutMs = Math.max(this.minTimeoutMs, maxTimeoutMs);
+    this.rto = clamp(initialTimeoutMs);
+  }
+
+  /**
+   * Adds a round-trip sample. Callers must skip requests that were retransmitted (Karn's
+   * algorithm): the response cannot be matched to a particular attempt.
+   */
+  synchronized long sample(long rttMs) {
+    if (srtt < 0) {
+      srtt = rttMs;
+      rttvar = rttMs / 2.0;
+    } else {
+      rttvar = 0.75 * rttvar + 0.25 * Math.abs(srtt - rttMs);
+      srtt = 0.875 * srtt + 0.125 * rttMs;
+    }
+    rto = clamp(Math.round(srtt + Math.max(1, 4 * rttvar)));
+    return rto;
+  }
+
+  synchronized long backoff() {
+    rto = clamp(rto * 2);
+    return rto;
+  }
+
+  synchronized long timeoutMs() { return rto; }
+
+  synchronized double smoothedRttMs() { return srtt; }
+
+  private long clamp(long timeoutMs) {
+    return Math.min(maxTimeoutMs, Math.max(minTimeoutMs, timeoutMs));
+  }
+}
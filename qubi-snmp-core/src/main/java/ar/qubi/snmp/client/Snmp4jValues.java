@@ -0,0 +1,69 @@
+package ar.qubi.snmp.client;
+
+import ar.qubi.snmp.api.Oid;
+import ar.qubi.snmp.api.OidTable;
+import ar.qubi.snmp.api.SmiSyntax;
+import ar.qubi.snmp.api.SnmpValue;
+import ar.qubi.snmp.api.Var;
+import org.snmp4j.smi.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Converts decoded SNMP4J variables into {@link SnmpValue}s without rendering strings.
+ * Octet strings and OIDs wrap the decoded arrays as-is; the PDU they come from is not reused.
+ */
+public final class Snmp4jValues {
+  private Snmp4jValues() {}
+
+  public static Var toVar(VariableBinding vb) {
+    return new Var(toOid(vb.getOid()), toValue(vb.getVariable()));
+  }
+
+  /** View of the decoded OID sharing its arcs array, with its parent interned. */
+  public static Oid toOid(OID oid) {
+    return OidTable.SHARED.instance(oid.getValue());
+  }
+
+  /** Like {@link #toVar(VariableBinding)}, but interns nothing; for bindings from untrusted senders. */
+  public static Var toUninternedVar(VariableBinding vb) {
+    return new Var(Oid.wrap(vb.getOid().getValue()), toValue(vb.getVariable()));
+  }
+
+  public static SnmpValue toValue(Variable variable) {
+    SmiSyntax syntax = SmiSyntax.fromTag(variable.getSyntax());
+    switch (syntax) {
+      case INTEGER:
+        return SnmpValue.ofInteger(((Integer32) variable).getValue());
+      case COUNTER32:
+      case GAUGE32:
+      case TIMETICKS:
+      case COUNTER64:
+        return SnmpValue.ofUnsigned(syntax, variable.toLong());
+      case OCTET_STRING:
+        return SnmpValue.ofOctets(((OctetString) variable).getValue());
+      case OPAQUE:
+        return SnmpValue.ofOpaque(((OctetString) variable).getValue());
+      case IP_ADDRESS:
+        return SnmpValue.ofIpAddress(((IpAddress) variable).getInetAddress().getAddress());
+      case OBJECT_IDENTIFIER:
+        return SnmpValue.ofOid(((OID) variable).getValue());
+      case UNKNOWN:
+        return SnmpValue.ofUnknown(encode(variable));
+      default:
+        return SnmpValue.ofNull(syntax);
+    }
+  }
+
+  private static byte[] encode(Variable variable) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(variable.getBERLength());
+    try {
+      variable.encodeBER(out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toByteArray();
+  }
+}
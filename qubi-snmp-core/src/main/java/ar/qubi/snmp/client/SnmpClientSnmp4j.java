@@ -1,154 +1,311 @@
 package ar.qubi.snmp.client;
 
 import ar.qubi.snmp.api.*;
+import ar.qubi.snmp.autoconfigure.QubiSnmpProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.snmp4j.*;
 import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.mp.MPv1;
+import org.snmp4j.mp.MPv2c;
 import org.snmp4j.mp.MPv3;
 import org.snmp4j.mp.SnmpConstants;
 import org.snmp4j.security.*;
 import org.snmp4j.smi.*;
 import org.snmp4j.transport.DefaultUdpTransportMapping;
-import org.snmp4j.util.DefaultPDUFactory;
-import org.snmp4j.util.TreeEvent;
-import org.snmp4j.util.TreeUtils;
+import org.snmp4j.util.MultiThreadedMessageDispatcher;
+import org.snmp4j.util.ThreadPool;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class SnmpClientSnmp4j implements AsyncSnmpClient, MeterBinder, Closeable {
+    private static final Integer32 USM_ID = new Integer32(MPv3.ID);
 
-public class SnmpClientSnmp4j implements SnmpClient {
     private final Snmp snmp;
-    private final TreeUtils treeUtils;
+    private final SnmpRequestGovernor governor;
+    private final SnmpTargetCache targetCache;
+    private final QubiSnmpProperties.Client props;
+    private final DefaultUdpTransportMapping[] transports;
+    private final AtomicInteger nextTransport = new AtomicInteger();
+    // Null unless decoding is handed off to dispatcher threads
+    private final ThreadPool dispatcherPool;
+    // Users registered in registeredUsm, by security name
+    private final Map<String, V3Sec> usmUsers = new ConcurrentHashMap<>();
+    private volatile USM registeredUsm;
 
     public SnmpClientSnmp4j() throws IOException {
-        TransportMapping<?> transport = new DefaultUdpTransportMapping();
-        this.snmp = new Snmp(transport);
+        this(new QubiSnmpProperties.Client());
+    }
+
+    public SnmpClientSnmp4j(QubiSnmpProperties.Client props) throws IOException {
+        this.props = props;
+        this.governor = new SnmpRequestGovernor(props.getMaxInFlight(), props.getMaxInFlightPerTarget(), props.getMaxQueued());
+        this.targetCache = new SnmpTargetCache(props.getTargetCacheSize());
+
+        // Each socket has its own listen thread, so several sockets spread receive and decode work
+        this.transports = new DefaultUdpTransportMapping[Math.max(1, props.getTransports())];
+        for (int i = 0; i < transports.length; i++) {
+            transports[i] = new DefaultUdpTransportMapping();
+            if (props.getReceiveBufferSize() > 0) {
+                transports[i].setReceiveBufferSize(props.getReceiveBufferSize());
+            }
+        }
+
+        if (props.getDispatcherThreads() > 0) {
+            this.dispatcherPool = ThreadPool.create("qubi-snmp-dispatcher", props.getDispatcherThreads());
+            MessageDispatcher dispatcher = new MultiThreadedMessageDispatcher(dispatcherPool, new MessageDispatcherImpl());
+            dispatcher.addMessageProcessingModel(new MPv1());
+            dispatcher.addMessageProcessingModel(new MPv2c());
+            dispatcher.addMessageProcessingModel(new MPv3());
+            this.snmp = new Snmp(dispatcher, transports[0]);
+        } else {
+            this.dispatcherPool = null;
+            this.snmp = new Snmp(transports[0]);
+        }
+        for (int i = 1; i < transports.length; i++) {
+            snmp.addTransportMapping(transports[i]);
+        }
         
         // Add USM for SNMPv3 support
         USM usm = new USM(SecurityProtocols.getInstance(), new OctetString(MPv3.createLocalEngineID()), 0);
         SecurityModels.getInstance().addSecurityModel(usm);
+        this.registeredUsm = usm;
         
-        transport.listen();
-        this.treeUtils = new TreeUtils(snmp, new DefaultPDUFactory());
+        snmp.listen();
     }
 
     @Override
-    public SnmpResult get(TargetSpec target, String... oids) {
+    public CompletableFuture<SnmpResult> getAsync(TargetSpec target, String... oids) {
+        return request(target, PDU.GET, 0, 0, oids);
+    }
+
+    @Override
+    public CompletableFuture<SnmpResult> getNextAsync(TargetSpec target, String... oids) {
+        return request(target, PDU.GETNEXT, 0, 0, oids);
+    }
+
+    @Override
+    public CompletableFuture<SnmpResult> bulkAsync(TargetSpec target, int nonRepeaters, int maxRepetitions, String... oids) {
+        return request(target, PDU.GETBULK, nonRepeaters, maxRepetitions, oids);
+    }
+
+    @Override
+    public CompletableFuture<SnmpWalkResult> walkAsync(TargetSpec target, String rootOid) {
+        List<Var> vars = new ArrayList<>();
+        return walkAsync(target, List.of(rootOid), props.getWalkMaxRepetitions(), vars::add)
+                .thenApply(result -> new SnmpWalkResult(vars, result.durationMs(), result.error()));
+    }
+
+    @Override
+    public CompletableFuture<SnmpStreamResult> walkAsync(TargetSpec target, List<String> rootOids, int maxRepetitions,
+                                                         Consumer<Var> sink) {
         long startTime = System.currentTimeMillis();
         try {
-            Target snmpTarget = createTarget(target);
-            PDU pdu = createPDU(target.version());
-            
-            for (String oid : oids) {
-                pdu.add(new VariableBinding(new OID(oid)));
-            }
-            
-            ResponseEvent response = snmp.send(pdu, snmpTarget);
-            long duration = System.currentTimeMillis() - startTime;
-            
-            if (response.getResponse() == null) {
-                return new SnmpResult(List.of(), duration, "No response from target");
+            CachedTarget snmpTarget = resolveTarget(target);
+            SubtreeWalk walk = new SubtreeWalk(target, snmpTarget, Math.max(1, maxRepetitions), sink);
+            CompletableFuture<?>[] columns = new CompletableFuture<?>[rootOids.size()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = walk.start(new OID(OidTable.SHARED.parse(rootOids.get(i)).arcs()));
             }
-            
-            return processResponse(response.getResponse(), duration);
-        } catch (IOException e) {
+            return CompletableFuture.allOf(columns).thenApply(ignored -> walk.result(startTime));
+        } catch (Exception e) {
             long duration = System.currentTimeMillis() - startTime;
-            return new SnmpResult(List.of(), duration, "IO Error: " + e.getMessage());
+            return CompletableFuture.completedFuture(new SnmpStreamResult(0, duration, "Walk error: " + e.getMessage()));
         }
     }
 
-    @Override
-    public SnmpResult getNext(TargetSpec target, String... oids) {
+    private CompletableFuture<SnmpResult> request(TargetSpec target, int type, int nonRepeaters, int maxRepetitions, String... oids) {
         long startTime = System.currentTimeMillis();
+        CompletableFuture<SnmpResult> result;
         try {
-            Target snmpTarget = createTarget(target);
-            PDU pdu = createPDU(target.version());
-            pdu.setType(PDU.GETNEXT);
-            
-            for (String oid : oids) {
-                pdu.add(new VariableBinding(new OID(oid)));
+            CachedTarget snmpTarget = resolveTarget(target);
+
+            OID[] request = new OID[oids.length];
+            for (int i = 0; i < oids.length; i++) {
+                request[i] = new OID(OidTable.SHARED.parse(oids[i]).arcs());
             }
-            
-            ResponseEvent response = snmp.send(pdu, snmpTarget);
-            long duration = System.currentTimeMillis() - startTime;
-            
-            if (response.getResponse() == null) {
-                return new SnmpResult(List.of(), duration, "No response from target");
+
+            if (type != PDU.GETBULK) {
+                result = sendVarbinds(target, snmpTarget, type, request, 0, request.length);
+            } else if (!"1".equals(target.version())) {
+                result = sendBulk(target, snmpTarget, nonRepeaters, maxRepetitions, request);
+            } else {
+                // Fall back to GETNEXT for SNMPv1
+                result = sendVarbinds(target, snmpTarget, PDU.GETNEXT, request, 0, request.length);
             }
-            
-            return processResponse(response.getResponse(), duration);
-        } catch (IOException e) {
+        } catch (Exception e) {
+            // Bad target or OID: report it in the result like every other failure
             long duration = System.currentTimeMillis() - startTime;
-            return new SnmpResult(List.of(), duration, "IO Error: " + e.getMessage());
+            return CompletableFuture.completedFuture(new SnmpResult(List.of(), duration, "Request error: " + e.getMessage()));
         }
+
+        return result.handle((response, error) -> {
+            long duration = System.currentTimeMillis() - startTime;
+            if (error instanceof CompletionException && error.getCause() != null) {
+                error = error.getCause();
+            }
+            if (error instanceof RejectedExecutionException) {
+                return new SnmpResult(List.of(), duration, "Rejected: " + error.getMessage());
+            }
+            if (error != null) {
+                return new SnmpResult(List.of(), duration, "IO Error: " + error.getMessage());
+            }
+            return new SnmpResult(response.vars(), duration, response.error());
+        });
     }
 
-    @Override
-    public SnmpResult bulk(TargetSpec target, int nonRepeaters, int maxRepetitions, String... oids) {
-        long startTime = System.currentTimeMillis();
-        try {
-            Target snmpTarget = createTarget(target);
-            PDU pdu = createPDU(target.version());
-            
-            if (pdu instanceof ScopedPDU) {
-                pdu.setType(PDU.GETBULK);
-                pdu.setNonRepeaters(nonRepeaters);
-                pdu.setMaxRepetitions(maxRepetitions);
-            } else {
-                // Fall back to GETNEXT for SNMPv1
-                pdu.setType(PDU.GETNEXT);
+    /**
+     * GET/GETNEXT for {@code oids[from..to)}. Requests larger than what the agent is known to
+     * accept are split up front; a tooBig answer halves the request, remembers the smaller
+     * size for the target and retries both halves.
+     */
+    private CompletableFuture<SnmpResult> sendVarbinds(TargetSpec target, CachedTarget snmpTarget, int type,
+                                                       OID[] oids, int from, int to) {
+        int limit = snmpTarget.maxVarbinds();
+        if (to - from > limit) {
+            List<CompletableFuture<SnmpResult>> parts = new ArrayList<>();
+            for (int i = from; i < to; i += limit) {
+                parts.add(sendVarbinds(target, snmpTarget, type, oids, i, Math.min(to, i + limit)));
             }
-            
-            for (String oid : oids) {
-                pdu.add(new VariableBinding(new OID(oid)));
+            return combine(parts);
+        }
+
+        PDU pdu = createPDU(target.version());
+        pdu.setType(type);
+        for (int i = from; i < to; i++) {
+            pdu.add(new VariableBinding(oids[i]));
+        }
+
+        return exchange(target, snmpTarget, pdu).thenCompose(response -> {
+            if (response != null && response.getErrorStatus() == PDU.tooBig && to - from > 1) {
+                int half = (to - from + 1) / 2;
+                snmpTarget.learnMaxVarbinds(half);
+                return combine(List.of(
+                        sendVarbinds(target, snmpTarget, type, oids, from, from + half),
+                        sendVarbinds(target, snmpTarget, type, oids, from + half, to)));
             }
-            
-            ResponseEvent response = snmp.send(pdu, snmpTarget);
-            long duration = System.currentTimeMillis() - startTime;
-            
-            if (response.getResponse() == null) {
-                return new SnmpResult(List.of(), duration, "No response from target");
+            return CompletableFuture.completedFuture(toResult(response));
+        });
+    }
+
+    /** GETBULK; a tooBig answer halves max-repetitions, remembers it for the target and retries. */
+    private CompletableFuture<SnmpResult> sendBulk(TargetSpec target, CachedTarget snmpTarget, int nonRepeaters,
+                                                   int maxRepetitions, OID[] oids) {
+        int repetitions = Math.min(maxRepetitions, snmpTarget.maxRepetitions());
+        PDU pdu = createPDU(target.version());
+        pdu.setType(PDU.GETBULK);
+        pdu.setNonRepeaters(nonRepeaters);
+        pdu.setMaxRepetitions(repetitions);
+        for (OID oid : oids) {
+            pdu.add(new VariableBinding(oid));
+        }
+
+        return exchange(target, snmpTarget, pdu).thenCompose(response -> {
+            if (response != null && response.getErrorStatus() == PDU.tooBig && repetitions > 1) {
+                snmpTarget.learnMaxRepetitions(repetitions / 2);
+                return sendBulk(target, snmpTarget, nonRepeaters, repetitions / 2, oids);
             }
-            
-            return processResponse(response.getResponse(), duration);
-        } catch (IOException e) {
-            long duration = System.currentTimeMillis() - startTime;
-            return new SnmpResult(List.of(), duration, "IO Error: " + e.getMessage());
+            return CompletableFuture.completedFuture(toResult(response));
+        });
+    }
+
+    private CompletableFuture<PDU> exchange(TargetSpec target, CachedTarget snmpTarget, PDU pdu) {
+        return governor.submit(target, () -> send(pdu, snmpTarget));
+    }
+
+    private SnmpResult toResult(PDU response) {
+        if (response == null) {
+            return new SnmpResult(List.of(), 0, "No response from target");
         }
+        return processResponse(response, 0);
     }
 
-    @Override
-    public SnmpWalkResult walk(TargetSpec target, String rootOid) {
-        long startTime = System.currentTimeMillis();
-        try {
-            Target snmpTarget = createTarget(target);
-            List<TreeEvent> events = treeUtils.getSubtree(snmpTarget, new OID(rootOid));
-            long duration = System.currentTimeMillis() - startTime;
-            
+    private static CompletableFuture<SnmpResult> combine(List<CompletableFuture<SnmpResult>> parts) {
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
             List<Var> vars = new ArrayList<>();
-            String error = null;
-            
-            for (TreeEvent event : events) {
-                if (event.isError()) {
-                    error = "Walk error: " + event.getErrorMessage();
-                    break;
+            for (CompletableFuture<SnmpResult> part : parts) {
+                SnmpResult result = part.join();
+                if (!result.ok()) {
+                    return result;
                 }
-                
-                VariableBinding[] vbs = event.getVariableBindings();
-                if (vbs != null) {
-                    for (VariableBinding vb : vbs) {
-                        if (vb.getOid() != null && vb.getVariable() != null) {
-                            vars.add(new Var(vb.getOid().toString(), vb.getVariable().toString()));
-                        }
+                vars.addAll(result.vars());
+            }
+            return new SnmpResult(vars, 0, null);
+        });
+    }
+
+    /**
+     * Sends the PDU through the asynchronous SNMP4J path. The future completes with the
+     * response PDU, or {@code null} when the request timed out after all retries.
+     */
+    private CompletableFuture<PDU> send(PDU pdu, CachedTarget snmpTarget) {
+        CompletableFuture<PDU> future = new CompletableFuture<>();
+        long sentAt = System.nanoTime();
+        long timeoutUsed = snmpTarget.target.getTimeout();
+        try {
+            snmp.send(pdu, snmpTarget.target, snmpTarget.transport, null, new ResponseListener() {
+                @Override
+                public <A extends Address> void onResponse(ResponseEvent<A> event) {
+                    // Always cancel, otherwise SNMP4J keeps the request (and its retries) registered
+                    ((Snmp) event.getSource()).cancel(event.getRequest(), this);
+                    if (event.getError() != null) {
+                        future.completeExceptionally(event.getError());
+                    } else {
+                        long elapsedMs = (System.nanoTime() - sentAt) / 1_000_000;
+                        snmpTarget.record(elapsedMs, timeoutUsed, event.getResponse() != null);
+                        future.complete(event.getResponse());
                     }
                 }
-            }
-            
-            return new SnmpWalkResult(vars, duration, error);
-        } catch (Exception e) {
-            long duration = System.currentTimeMillis() - startTime;
-            return new SnmpWalkResult(List.of(), duration, "Walk error: " + e.getMessage());
+            });
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private CachedTarget resolveTarget(TargetSpec targetSpec) {
+        CachedTarget cached = targetCache.get(targetSpec);
+        if (cached != null && (targetSpec.v3() == null || currentUsm() == registeredUsm)) {
+            return cached;
         }
+
+        Target snmpTarget = createTarget(targetSpec);
+        RttEstimator rtt = null;
+        if (props.getAdaptiveTimeout().isEnabled()) {
+            QubiSnmpProperties.Client.AdaptiveTimeout adaptive = props.getAdaptiveTimeout();
+            rtt = new RttEstimator(props.getTimeoutMs(), adaptive.getMinTimeoutMs(), adaptive.getMaxTimeoutMs());
+            snmpTarget.setTimeout(rtt.timeoutMs());
+        }
+        cached = new CachedTarget(snmpTarget, rtt, selectTransport(targetSpec));
+        targetCache.put(targetSpec, cached);
+        return cached;
+    }
+
+    /**
+     * With affinity every request to a target leaves (and its answer arrives) on the same socket;
+     * otherwise targets are spread round-robin as they are first resolved.
+     */
+    private TransportMapping<?> selectTransport(TargetSpec targetSpec) {
+        if (transports.length == 1) {
+            return transports[0];
+        }
+        int index = props.isTransportAffinity()
+                ? Math.floorMod(targetSpec.hashCode(), transports.length)
+                : Math.floorMod(nextTransport.getAndIncrement(), transports.length);
+        return transports[index];
     }
 
     private Target createTarget(TargetSpec targetSpec) {
@@ -166,8 +323,8 @@ public class SnmpClientSnmp4j implements SnmpClient {
                 v1Target.setCommunity(new OctetString(targetSpec.community() != null ? targetSpec.community() : "public"));
                 v1Target.setAddress(address);
                 v1Target.setVersion(SnmpConstants.version1);
-                v1Target.setTimeout(5000);
-                v1Target.setRetries(2);
+                v1Target.setTimeout(props.getTimeoutMs());
+                v1Target.setRetries(props.getRetries());
                 return v1Target;
                 
             case "2c":
@@ -175,16 +332,16 @@ public class SnmpClientSnmp4j implements SnmpClient {
                 v2Target.setCommunity(new OctetString(targetSpec.community() != null ? targetSpec.community() : "public"));
                 v2Target.setAddress(address);
                 v2Target.setVersion(SnmpConstants.version2c);
-                v2Target.setTimeout(5000);
-                v2Target.setRetries(2);
+                v2Target.setTimeout(props.getTimeoutMs());
+                v2Target.setRetries(props.getRetries());
                 return v2Target;
                 
             case "3":
                 UserTarget v3Target = new UserTarget();
                 v3Target.setAddress(address);
                 v3Target.setVersion(SnmpConstants.version3);
-                v3Target.setTimeout(5000);
-                v3Target.setRetries(2);
+                v3Target.setTimeout(props.getTimeoutMs());
+                v3Target.setRetries(props.getRetries());
                 
                 if (targetSpec.v3() != null) {
                     v3Target.setSecurityLevel(parseSecurityLevel(targetSpec.v3().securityLevel()));
@@ -200,9 +357,39 @@ public class SnmpClientSnmp4j implements SnmpClient {
         }
     }
 
+    private static USM currentUsm() {
+        return (USM) SecurityModels.getInstance().getSecurityModel(USM_ID);
+    }
+
     private void addUser(V3Sec v3Sec) {
-        USM usm = (USM) SecurityModels.getInstance().getSecurityModel(new Integer32(MPv3.ID));
-        
+        USM usm = currentUsm();
+        if (usm != registeredUsm) {
+            synchronized (usmUsers) {
+                if (usm != registeredUsm) {
+                    // The USM was replaced (e.g. by the trap server): carry every known user over, since
+                    // cached targets for them are still considered resolved
+                    for (V3Sec known : usmUsers.values()) {
+                        usm.addUser(toUsmUser(known));
+                    }
+                    registeredUsm = usm;
+                }
+            }
+        }
+
+        V3Sec previous = usmUsers.put(v3Sec.username(), v3Sec);
+        if (v3Sec.equals(previous)) {
+            return;
+        }
+        if (previous != null) {
+            // Credentials changed: targets resolved for the old ones must register their user again
+            targetCache.invalidateIf(spec -> spec.v3() != null
+                    && v3Sec.username().equals(spec.v3().username())
+                    && !v3Sec.equals(spec.v3()));
+        }
+        usm.addUser(toUsmUser(v3Sec));
+    }
+
+    private static UsmUser toUsmUser(V3Sec v3Sec) {
         OID authProtocol = null;
         OID privProtocol = null;
         
@@ -216,15 +403,13 @@ public class SnmpClientSnmp4j implements SnmpClient {
                 new OID(v3Sec.privProtocol()) : PrivAES128.ID;
         }
         
-        UsmUser user = new UsmUser(
+        return new UsmUser(
             new OctetString(v3Sec.username()),
             authProtocol,
             v3Sec.authPass() != null ? new OctetString(v3Sec.authPass()) : null,
             privProtocol,
             v3Sec.privPass() != null ? new OctetString(v3Sec.privPass()) : null
         );
-        
-        usm.addUser(user);
     }
     
     private int parseSecurityLevel(String securityLevel) {
@@ -254,6 +439,108 @@ public class SnmpClientSnmp4j implements SnmpClient {
         }
     }
 
+    /**
+     * Walks subtrees with one chain of GETBULK requests per root (GETNEXT for v1). Each chain
+     * sends its next request from the callback of the previous response, so rows reach the sink
+     * while the rest of the table is still on the wire. Sink calls are serialized on this object.
+     */
+    private final class SubtreeWalk {
+        private final TargetSpec target;
+        private final CachedTarget snmpTarget;
+        private final int maxRepetitions;
+        private final Consumer<Var> sink;
+        // Guarded by this
+        private long rows;
+        private String error;
+
+        SubtreeWalk(TargetSpec target, CachedTarget snmpTarget, int maxRepetitions, Consumer<Var> sink) {
+            this.target = target;
+            this.snmpTarget = snmpTarget;
+            this.maxRepetitions = maxRepetitions;
+            this.sink = sink;
+        }
+
+        CompletableFuture<Void> start(OID root) {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            next(root, root, done);
+            return done;
+        }
+
+        private void next(OID root, OID from, CompletableFuture<Void> done) {
+            int repetitions = Math.min(maxRepetitions, snmpTarget.maxRepetitions());
+            PDU pdu = createPDU(target.version());
+            if ("1".equals(target.version())) {
+                pdu.setType(PDU.GETNEXT);
+            } else {
+                pdu.setType(PDU.GETBULK);
+                pdu.setMaxRepetitions(repetitions);
+            }
+            pdu.add(new VariableBinding(from));
+
+            exchange(target, snmpTarget, pdu).whenComplete((response, failure) -> {
+                OID last = null;
+                try {
+                    last = onResponse(root, from, repetitions, response, failure);
+                } catch (RuntimeException e) {
+                    fail("Walk error: " + e.getMessage());
+                }
+                if (last != null) {
+                    next(root, last, done);
+                } else {
+                    done.complete(null);
+                }
+            });
+        }
+
+        /** Delivers the rows under {@code root} and returns the OID to continue from, or null when done. */
+        private synchronized OID onResponse(OID root, OID from, int repetitions, PDU response, Throwable failure) {
+            if (failure != null) {
+                return fail("Walk error: " + failure.getMessage());
+            }
+            if (response == null) {
+                return fail("Walk error: No response from target");
+            }
+            if (response.getErrorStatus() == PDU.tooBig && repetitions > 1 && !"1".equals(target.version())) {
+                // Ask again for the same rows in smaller pages
+                snmpTarget.learnMaxRepetitions(repetitions / 2);
+                return from;
+            }
+            if (response.getErrorStatus() != 0) {
+                // v1 agents answer noSuchName past the end of the MIB
+                if (response.getErrorStatus() == PDU.noSuchName && "1".equals(target.version())) {
+                    return null;
+                }
+                return fail("Walk error: " + response.getErrorStatusText());
+            }
+
+            OID last = from;
+            for (VariableBinding vb : response.getVariableBindings()) {
+                OID oid = vb.getOid();
+                if (oid == null || vb.isException() || !oid.startsWith(root)) {
+                    return null;
+                }
+                if (oid.compareTo(last) <= 0) {
+                    return fail("Walk error: OID not increasing at " + oid);
+                }
+                sink.accept(Snmp4jValues.toVar(vb));
+                rows++;
+                last = oid;
+            }
+            return last == from ? null : last;
+        }
+
+        synchronized SnmpStreamResult result(long startTime) {
+            return new SnmpStreamResult(rows, System.currentTimeMillis() - startTime, error);
+        }
+
+        private synchronized OID fail(String message) {
+            if (error == null) {
+                error = message;
+            }
+            return null;
+        }
+    }
+
     private SnmpResult processResponse(PDU response, long duration) {
         if (response.getErrorStatus() != 0) {
             return new SnmpResult(List.of(), duration, "SNMP Error: " + response.getErrorStatusText());
@@ -262,16 +549,42 @@ public class SnmpClientSnmp4j implements SnmpClient {
         List<Var> vars = new ArrayList<>();
         for (VariableBinding vb : response.getVariableBindings()) {
             if (vb.getOid() != null && vb.getVariable() != null) {
-                vars.add(new Var(vb.getOid().toString(), vb.getVariable().toString()));
+                vars.add(Snmp4jValues.toVar(vb));
             }
         }
         
         return new SnmpResult(vars, duration, null);
     }
 
+    public SnmpRequestGovernor getGovernor() {
+        return governor;
+    }
+
+    public SnmpTargetCache getTargetCache() {
+        return targetCache;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("qubi.snmp.client.target.cache", targetCache, SnmpTargetCache::hits)
+                .tag("result", "hit").register(registry);
+        FunctionCounter.builder("qubi.snmp.client.target.cache", targetCache, SnmpTargetCache::misses)
+                .tag("result", "miss").register(registry);
+        FunctionCounter.builder("qubi.snmp.client.target.cache.evictions", targetCache, SnmpTargetCache::evictions)
+                .register(registry);
+        Gauge.builder("qubi.snmp.client.target.cache.size", targetCache, SnmpTargetCache::size).register(registry);
+        Gauge.builder("qubi.snmp.client.requests.in.flight", governor, SnmpRequestGovernor::inFlight).register(registry);
+        Gauge.builder("qubi.snmp.client.requests.queued", governor, SnmpRequestGovernor::queued).register(registry);
+        FunctionCounter.builder("qubi.snmp.client.requests.rejected", governor, SnmpRequestGovernor::rejected)
+                .register(registry);
+    }
+
     public void close() throws IOException {
         if (snmp != null) {
             snmp.close();
         }
+        if (dispatcherPool != null) {
+            dispatcherPool.stop();
+        }
     }
 }
\ No newline at end of file
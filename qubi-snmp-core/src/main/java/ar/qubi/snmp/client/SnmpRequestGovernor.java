@@ -0,0 +1,175 @@
+package ar.qubi.snmp.client;
+
+import ar.qubi.snmp.api.TargetSpec;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the number of outstanding requests, globally and per {@link TargetSpec}.
+ * Requests over either limit wait in a per-target FIFO; once {@code maxQueued} requests
+ * are waiting, new ones are rejected with {@link RejectedExecutionException} instead of
+ * piling up behind a slow agent.
+ * A limit {@code <= 0} means unbounded.
+ */
+public class SnmpRequestGovernor {
+  private final int maxInFlight;
+  private final int maxInFlightPerTarget;
+  private final int maxQueued;
+
+  // Guarded by this
+  private final Map<TargetSpec, Lane> lanes = new HashMap<>();
+  private final ArrayDeque<Lane> ready = new ArrayDeque<>();
+  private int inFlight;
+  private int queued;
+
+  private final LongAdder rejected = new LongAdder();
+  // Requests this thread still has to start, while an outer frame on it is starting requests
+  private final ThreadLocal<ArrayDeque<Pending<?>>> starting = new ThreadLocal<>();
+
+  public SnmpRequestGovernor(int maxInFlight, int maxInFlightPerTarget, int maxQueued) {
+    this.maxInFlight = maxInFlight > 0 ? maxInFlight : Integer.MAX_VALUE;
+    this.maxInFlightPerTarget = maxInFlightPerTarget > 0 ? maxInFlightPerTarget : Integer.MAX_VALUE;
+    this.maxQueued = maxQueued > 0 ? maxQueued : Integer.MAX_VALUE;
+  }
+
+  /**
+   * Runs {@code request} as soon as both limits allow it. The supplier is invoked at most once,
+   * either on the calling thread or on the thread that completes an earlier request.
+   */
+  public <T> CompletableFuture<T> submit(TargetSpec target, Supplier<CompletableFuture<T>> request) {
+    Pending<T> pending = new Pending<>(request);
+    Lane lane;
+    synchronized (this) {
+      lane = lanes.computeIfAbsent(target, Lane::new);
+      if (lane.queue.isEmpty() && inFlight < maxInFlight && lane.inFlight < maxInFlightPerTarget) {
+        lane.inFlight++;
+        inFlight++;
+      } else if (queued >= maxQueued) {
+        if (lane.isIdle()) {
+          lanes.remove(target);
+        }
+        rejected.increment();
+        return CompletableFuture.failedFuture(new RejectedExecutionException(
+            "Request queue full (" + queued + " waiting) for " + target.host() + ":" + target.port()));
+      } else {
+        lane.queue.add(pending);
+        queued++;
+        if (!lane.ready && lane.inFlight < maxInFlightPerTarget) {
+          lane.ready = true;
+          ready.add(lane);
+        }
+        return pending.result;
+      }
+    }
+    pending.lane = lane;
+    start(pending);
+    return pending.result;
+  }
+
+  /**
+   * Starts the request, and every request whose slot frees up meanwhile, in a loop. A request
+   * that fails synchronously releases its slot inline, and starting the next one from there
+   * would recurse once per queued request.
+   */
+  private void start(Pending<?> pending) {
+    ArrayDeque<Pending<?>> queue = starting.get();
+    if (queue != null) {
+      queue.add(pending);
+      return;
+    }
+    queue = new ArrayDeque<>();
+    starting.set(queue);
+    try {
+      for (Pending<?> next = pending; next != null; next = queue.poll()) {
+        next.start();
+      }
+    } finally {
+      starting.remove();
+    }
+  }
+
+  private void release(Lane lane) {
+    List<Pending<?>> toStart = List.of();
+    synchronized (this) {
+      lane.inFlight--;
+      inFlight--;
+      if (!lane.ready && !lane.queue.isEmpty()) {
+        lane.ready = true;
+        ready.add(lane);
+      } else if (lane.isIdle()) {
+        lanes.remove(lane.target);
+      }
+
+      while (inFlight < maxInFlight && !ready.isEmpty()) {
+        Lane next = ready.poll();
+        Pending<?> pending = next.queue.poll();
+        next.inFlight++;
+        inFlight++;
+        queued--;
+        next.ready = !next.queue.isEmpty() && next.inFlight < maxInFlightPerTarget;
+        if (next.ready) {
+          ready.add(next);
+        }
+        if (toStart.isEmpty()) {
+          toStart = new ArrayList<>(2);
+        }
+        toStart.add(pending);
+        pending.lane = next;
+      }
+    }
+    for (Pending<?> pending : toStart) {
+      start(pending);
+    }
+  }
+
+  public synchronized int inFlight() { return inFlight; }
+
+  public synchronized int queued() { return queued; }
+
+  public long rejected() { return rejected.sum(); }
+
+  private static final class Lane {
+    final TargetSpec target;
+    final ArrayDeque<Pending<?>> queue = new ArrayDeque<>();
+    int inFlight;
+    boolean ready;
+
+    Lane(TargetSpec target) { this.target = target; }
+
+    boolean isIdle() { return inFlight == 0 && queue.isEmpty(); }
+  }
+
+  private final class Pending<T> {
+    final Supplier<CompletableFuture<T>> request;
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    Lane lane;
+
+    Pending(Supplier<CompletableFuture<T>> request) { this.request = request; }
+
+    void start() {
+      CompletableFuture<T> inner;
+      try {
+        inner = request.get();
+      } catch (RuntimeException e) {
+        inner = CompletableFuture.failedFuture(e);
+      }
+      inner.whenComplete((value, error) -> {
+        // Free the slot before completing so callbacks that chain a new request see the capacity
+        release(lane);
+        if (error != null) {
+          result.completeExceptionally(error);
+        } else {
+          result.complete(value);
+        }
+      });
+    }
+  }
+}
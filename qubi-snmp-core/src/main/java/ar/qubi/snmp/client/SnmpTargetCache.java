@@ -0,0 +1,87 @@
+package ar.qubi.snmp.client;
+
+import ar.qubi.snmp.api.TargetSpec;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Bounded LRU of resolved SNMP4J targets keyed by {@link TargetSpec}.
+ * Since the spec carries the credentials, a changed community or v3 secret is a different key;
+ * stale entries that share a USM user are dropped through {@link #invalidateIf(Predicate)}.
+ */
+public class SnmpTargetCache {
+  private final int capacity;
+  private final LinkedHashMap<TargetSpec, CachedTarget> entries;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  public SnmpTargetCache(int capacity) {
+    this.capacity = Math.max(1, capacity);
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<TargetSpec, CachedTarget> eldest) {
+        if (size() > SnmpTargetCache.this.capacity) {
+          evictions.increment();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /** Returns the cached target or {@code null}, counting the lookup as a hit or a miss. */
+  CachedTarget get(TargetSpec spec) {
+    CachedTarget cached;
+    synchronized (entries) {
+      cached = entries.get(spec);
+    }
+    if (cached != null) {
+      hits.increment();
+    } else {
+      misses.increment();
+    }
+    return cached;
+  }
+
+  void put(TargetSpec spec, CachedTarget cached) {
+    synchronized (entries) {
+      entries.put(spec, cached);
+    }
+  }
+
+  public void invalidate(TargetSpec spec) {
+    synchronized (entries) {
+      entries.remove(spec);
+    }
+  }
+
+  public void invalidateIf(Predicate<TargetSpec> predicate) {
+    synchronized (entries) {
+      entries.keySet().removeIf(predicate);
+    }
+  }
+
+  public void invalidateAll() {
+    synchronized (entries) {
+      entries.clear();
+    }
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public int capacity() { return capacity; }
+
+  public long hits() { return hits.sum(); }
+
+  public long misses() { return misses.sum(); }
+
+  public long evictions() { return evictions.sum(); }
+}
@@ -1,7 +1,13 @@
 package ar.qubi.snmp.mib;
 
+import ar.qubi.snmp.api.Oid;
+
 import java.util.Optional;
 
 public interface MibLookup {
   Optional<MibNode> find(String oid);
+
+  default Optional<MibNode> find(Oid oid) {
+    return find(oid.toString());
+  }
 }
@@ -1,5 +1,8 @@
 package ar.qubi.snmp.mib;
 
+import ar.qubi.snmp.api.Oid;
+import ar.qubi.snmp.api.OidTable;
+
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -65,29 +68,52 @@ public class SystemMibLookup implements MibLookup {
         MIB_ENTRIES.put("1.3.6.1.2.1.25.1.7.0", new MibNode("1.3.6.1.2.1.25.1.7.0", "hrSystemMaxProcesses", "Maximum number of processes", "Integer"));
     }
 
+    // Same entries keyed by compact OID, so lookups never split strings
+    private static final Map<Oid, MibNode> MIB_BY_OID = new HashMap<>();
+
+    static {
+        MIB_ENTRIES.forEach((oid, node) -> MIB_BY_OID.put(OidTable.SHARED.parse(oid), node));
+    }
+
     @Override
     public Optional<MibNode> find(String oid) {
         if (oid == null) {
             return Optional.empty();
         }
-        
+
         // Try exact match first
         MibNode node = MIB_ENTRIES.get(oid);
         if (node != null) {
             return Optional.of(node);
         }
-        
+
+        try {
+            return find(OidTable.SHARED.lookup(oid));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<MibNode> find(Oid oid) {
+        if (oid == null) {
+            return Optional.empty();
+        }
+
+        MibNode node = MIB_BY_OID.get(oid);
+        if (node != null) {
+            return Optional.of(node);
+        }
+
         // Try to find parent OID for table entries (e.g., 1.3.6.1.2.1.2.2.1.1.1 -> 1.3.6.1.2.1.2.2.1.1)
-        String[] parts = oid.split("\\.");
-        if (parts.length > 4) {
-            // Try removing the last part (instance index)
-            String parentOid = String.join(".", java.util.Arrays.copyOf(parts, parts.length - 1));
-            node = MIB_ENTRIES.get(parentOid);
+        if (oid.size() > 4) {
+            node = MIB_BY_OID.get(oid.parent());
             if (node != null) {
-                return Optional.of(new MibNode(oid, node.name() + "." + parts[parts.length - 1], node.description(), node.syntax()));
+                return Optional.of(new MibNode(oid.toString(), node.name() + "." + oid.getUnsigned(oid.size() - 1),
+                        node.description(), node.syntax()));
             }
         }
-        
+
         return Optional.empty();
     }
     
@@ -0,0 +1,258 @@
+package ar.qubi.snmp.scheduler;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.Locale;
+
+/**
+ * A cron expression compiled into one bit set per field. Accepts six fields
+ * ({@code sec min hour day-of-month month day-of-week}) or the classic five, which fire at second
+ * 0, and the macros {@code @yearly}, {@code @monthly}, {@code @weekly}, {@code @daily} and
+ * {@code @hourly}. Fields take {@code *}, {@code ?}, lists, ranges, {@code /} steps and
+ * {@code JAN}-{@code DEC} / {@code SUN}-{@code SAT} names; day of week 0 and 7 are both Sunday.
+ * When both day fields are restricted a day matching either one fires, as in Vixie cron.
+ * Times are wall-clock times in the zone: one skipped by a DST gap fires the length of the gap
+ * later, and one repeated by an overlap fires only in its first occurrence.
+ * <p>
+ * {@link #nextAfter(long)} works on epoch arithmetic and bit scans and allocates nothing for
+ * fixed-offset zones such as UTC.
+ */
+public final class CronExpression {
+  private static final String[] MONTHS = {"JAN", "FEB", "MAR", "APR", "MAY", "JUN", "JUL", "AUG", "SEP", "OCT", "NOV", "DEC"};
+  private static final String[] DAYS = {"SUN", "MON", "TUE", "WED", "THU", "FRI", "SAT"};
+  // A Feb 29 schedule can go 8 years without a match (2096 -> 2104)
+  private static final int SEARCH_YEARS = 10;
+
+  private final String expression;
+  private final long seconds;
+  private final long minutes;
+  private final long hours;
+  private final long daysOfMonth;
+  private final long months;
+  private final long daysOfWeek;
+  private final boolean anyDayOfMonth;
+  private final boolean anyDayOfWeek;
+  private final ZoneRules rules;
+  // Valid when rules is null
+  private final long fixedOffsetMs;
+
+  private CronExpression(String expression, String[] f, ZoneId zone) {
+    this.expression = expression;
+    int i = f.length == 6 ? 1 : 0;
+    this.seconds = f.length == 6 ? field(f[0], 0, 59, null) : 1L;
+    this.minutes = field(f[i], 0, 59, null);
+    this.hours = field(f[i + 1], 0, 23, null);
+    this.daysOfMonth = field(f[i + 2], 1, 31, null);
+    this.months = field(f[i + 3], 1, 12, MONTHS);
+    long dow = field(f[i + 4], 0, 7, DAYS);
+    this.daysOfWeek = (dow | (dow >>> 7)) & 0x7F;
+    this.anyDayOfMonth = isAny(f[i + 2]);
+    this.anyDayOfWeek = isAny(f[i + 4]);
+    ZoneRules zoneRules = zone.getRules();
+    if (zoneRules.isFixedOffset()) {
+      this.rules = null;
+      this.fixedOffsetMs = zoneRules.getOffset(Instant.EPOCH).getTotalSeconds() * 1000L;
+    } else {
+      this.rules = zoneRules;
+      this.fixedOffsetMs = 0;
+    }
+  }
+
+  /** Compiles the expression in the system default time zone. */
+  public static CronExpression parse(String expression) {
+    return parse(expression, ZoneId.systemDefault());
+  }
+
+  /** @throws IllegalArgumentException if the expression is malformed */
+  public static CronExpression parse(String expression, ZoneId zone) {
+    if (expression == null || expression.isBlank()) {
+      throw new IllegalArgumentException("Empty cron expression");
+    }
+    String trimmed = expression.trim();
+    String[] fields = macro(trimmed).split("\\s+");
+    if (fields.length != 5 && fields.length != 6) {
+      throw new IllegalArgumentException("Expected 5 or 6 fields but found " + fields.length);
+    }
+    return new CronExpression(trimmed, fields, zone);
+  }
+
+  public String expression() { return expression; }
+
+  /**
+   * First fire time strictly after {@code epochMillis}, in epoch milliseconds, or {@code -1} if
+   * the expression never matches (such as February 30).
+   */
+  public long nextAfter(long epochMillis) {
+    long offset = offsetMs(epochMillis);
+    long t = Math.floorDiv(epochMillis + offset, 1000) + 1;
+    long days = Math.floorDiv(t, 86400);
+    long limit = days + SEARCH_YEARS * 366L;
+    while (days <= limit) {
+      int sec = (int) (t - days * 86400);
+      // Civil date from days since 1970-01-01 (H. Hinnant's algorithm)
+      long z = days + 719468;
+      long era = Math.floorDiv(z, 146097);
+      long doe = z - era * 146097;
+      long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+      long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+      long mp = (5 * doy + 2) / 153;
+      int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+      int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+      long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+      if ((months & (1L << month)) == 0) {
+        int next = next(months, month);
+        long y = next < 0 ? year + 1 : year;
+        days = daysFromCivil(y, next < 0 ? first(months) : next, 1);
+        t = days * 86400;
+        continue;
+      }
+      if (!dayMatches(day, (int) Math.floorMod(days + 4, 7))) {
+        t = ++days * 86400;
+        continue;
+      }
+      int hour = sec / 3600;
+      int minute = sec / 60 % 60;
+      int second = sec % 60;
+      int h = next(hours, hour);
+      if (h != hour) {
+        if (h < 0) {
+          t = ++days * 86400;
+        } else {
+          t = days * 86400 + h * 3600L;
+        }
+        continue;
+      }
+      int m = next(minutes, minute);
+      if (m != minute) {
+        t = days * 86400 + hour * 3600L + (m < 0 ? 3600 : m * 60L);
+        days = Math.floorDiv(t, 86400);
+        continue;
+      }
+      int s = next(seconds, second);
+      if (s != second) {
+        t = days * 86400 + hour * 3600L + minute * 60L + (s < 0 ? 60 : s);
+        days = Math.floorDiv(t, 86400);
+        continue;
+      }
+      return toEpochMillis(t * 1000, offset);
+    }
+    return -1;
+  }
+
+  /** Milliseconds from {@code epochMillis} to the next fire time, or {@code -1} if there is none. */
+  public long delayAfter(long epochMillis) {
+    long next = nextAfter(epochMillis);
+    return next < 0 ? -1 : next - epochMillis;
+  }
+
+  private boolean dayMatches(int dayOfMonth, int dayOfWeek) {
+    boolean dom = (daysOfMonth & (1L << dayOfMonth)) != 0;
+    boolean dow = (daysOfWeek & (1L << dayOfWeek)) != 0;
+    if (anyDayOfMonth || anyDayOfWeek) {
+      return dom && dow;
+    }
+    return dom || dow;
+  }
+
+  /** Local wall-clock millis back to epoch millis; a time skipped by a DST gap moves forward. */
+  private long toEpochMillis(long localMs, long offsetBefore) {
+    long utc = localMs - offsetBefore;
+    if (rules == null) return utc;
+    long offset = offsetMs(utc);
+    if (offset != offsetBefore && offsetMs(localMs - offset) == offset) {
+      return localMs - offset;
+    }
+    return utc;
+  }
+
+  private long offsetMs(long epochMillis) {
+    if (rules == null) return fixedOffsetMs;
+    return rules.getOffset(Instant.ofEpochMilli(epochMillis)).getTotalSeconds() * 1000L;
+  }
+
+  /** Lowest set bit at or above {@code from}, or -1. */
+  private static int next(long bits, int from) {
+    long rest = bits & (-1L << from);
+    return rest == 0 ? -1 : Long.numberOfTrailingZeros(rest);
+  }
+
+  private static int first(long bits) {
+    return Long.numberOfTrailingZeros(bits);
+  }
+
+  private static long daysFromCivil(long year, int month, int day) {
+    long y = month <= 2 ? year - 1 : year;
+    long era = Math.floorDiv(y, 400);
+    long yoe = y - era * 400;
+    long doy = (153L * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+    return era * 146097 + doe - 719468;
+  }
+
+  private static boolean isAny(String field) {
+    return field.equals("*") || field.equals("?");
+  }
+
+  private static String macro(String expression) {
+    switch (expression.toLowerCase(Locale.ROOT)) {
+      case "@yearly":
+      case "@annually": return "0 0 0 1 1 *";
+      case "@monthly": return "0 0 0 1 * *";
+      case "@weekly": return "0 0 0 * * 0";
+      case "@daily":
+      case "@midnight": return "0 0 0 * * *";
+      case "@hourly": return "0 0 * * * *";
+      default: return expression;
+    }
+  }
+
+  private static long field(String field, int min, int max, String[] names) {
+    long bits = 0;
+    for (String part : field.split(",")) {
+      int step = 1;
+      int slash = part.indexOf('/');
+      if (slash >= 0) {
+        step = Integer.parseInt(part.substring(slash + 1));
+        if (step <= 0) throw new IllegalArgumentException("Invalid step in '" + field + "'");
+        part = part.substring(0, slash);
+      }
+      int from;
+      int to;
+      if (isAny(part)) {
+        from = min;
+        to = max;
+      } else {
+        int dash = part.indexOf('-');
+        from = value(dash >= 0 ? part.substring(0, dash) : part, min, names);
+        to = dash >= 0 ? value(part.substring(dash + 1), min, names) : (slash >= 0 ? max : from);
+      }
+      if (from < min || to > max || from > to) {
+        throw new IllegalArgumentException("Value out of range " + min + "-" + max + " in '" + field + "'");
+      }
+      for (int v = from; v <= to; v += step) {
+        bits |= 1L << v;
+      }
+    }
+    return bits;
+  }
+
+  private static int value(String text, int min, String[] names) {
+    if (names != null) {
+      for (int i = 0; i < names.length; i++) {
+        if (names[i].equalsIgnoreCase(text)) return i + min;
+      }
+    }
+    try {
+      return Integer.parseInt(text);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid cron value '" + text + "'");
+    }
+  }
+
+  @Override
+  public String toString() {
+    return expression;
+  }
+}
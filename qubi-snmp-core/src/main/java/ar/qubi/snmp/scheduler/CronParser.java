@@ -0,0 +1,37 @@
+package ar.qubi.snmp.scheduler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Compiles cron expressions once and keeps them, keyed by the expression text. */
+public final class CronParser {
+  private static final Map<String, CronExpression> cache = new ConcurrentHashMap<>();
+
+  private CronParser() {}
+
+  /** @throws IllegalArgumentException if the expression is malformed */
+  public static CronExpression compile(String cronExpression) {
+    if (cronExpression == null) {
+      throw new IllegalArgumentException("Empty cron expression");
+    }
+    CronExpression compiled = cache.get(cronExpression);
+    if (compiled == null) {
+      compiled = CronExpression.parse(cronExpression);
+      cache.putIfAbsent(cronExpression, compiled);
+    }
+    return compiled;
+  }
+
+  /**
+   * Milliseconds from now to the next fire time.
+   *
+   * @throws IllegalArgumentException if the expression is malformed or never fires
+   */
+  public static long getNextDelayMillis(String cronExpression) {
+    long delay = compile(cronExpression).delayAfter(System.currentTimeMillis());
+    if (delay < 0) {
+      throw new IllegalArgumentException("Cron expression never fires: " + cronExpression);
+    }
+    return delay;
+  }
+}
@@ -4,4 +4,15 @@ import ar.qubi.snmp.api.TargetSpec;
 import java.time.Duration;
 import java.util.Map;
 
-public record JobConfig(String cron, Duration fixedRate, TargetSpec target, Map<String,Object> params) {}
+/**
+ * @param overrun    what to do with runs missed while the job overran, or {@code null} for the
+ *                   registry default
+ * @param maxCatchUp bound on queued runs for {@link OverrunPolicy#CATCH_UP}, or {@code 0} for the
+ *                   registry default
+ */
+public record JobConfig(String cron, Duration fixedRate, TargetSpec target, Map<String,Object> params,
+                        OverrunPolicy overrun, int maxCatchUp) {
+  public JobConfig(String cron, Duration fixedRate, TargetSpec target, Map<String,Object> params) {
+    this(cron, fixedRate, target, params, null, 0);
+  }
+}
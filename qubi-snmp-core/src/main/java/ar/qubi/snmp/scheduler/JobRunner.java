@@ -0,0 +1,259 @@
+package ar.qubi.snmp.scheduler;
+
+import ar.qubi.snmp.api.TargetSpec;
+import ar.qubi.snmp.client.SnmpClient;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Runs polling job executions for a registry. The registry's timer only decides when a job is
+ * due; the execution is handed to the job executor (typically one virtual thread per execution)
+ * with at most {@code maxConcurrent} executions at a time, so the timer never waits on a job.
+ * A job never overlaps itself: a run that comes due while the previous one is still going is
+ * skipped, or queued to follow it, according to its {@link OverrunPolicy}.
+ */
+final class JobRunner {
+  private final SnmpClient client;
+  private final Logger log;
+  private final Executor executor;
+  private final Semaphore permits;
+  // Whether an execution may wait on its own thread for a permit; false when that thread keeps time
+  private final boolean waitForPermit;
+  private final LongAdder skipped = new LongAdder();
+  private final LongAdder late = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private volatile OverrunPolicy overrunPolicy = OverrunPolicy.SKIP;
+  private volatile int maxCatchUp = 3;
+
+  /**
+   * @param waitForPermit whether executions wait for a free slot on the executor thread; when
+   *                      false, a run that finds {@code maxConcurrent} executions going is not
+   *                      started and counted in {@link #rejectedRuns()}
+   */
+  JobRunner(SnmpClient client, Logger log, Executor executor, int maxConcurrent, boolean waitForPermit) {
+    this.client = client;
+    this.log = log;
+    this.executor = executor;
+    this.permits = maxConcurrent > 0 ? new Semaphore(maxConcurrent) : null;
+    this.waitForPermit = waitForPermit;
+  }
+
+  /**
+   * A virtual-thread-per-task executor when the runtime has virtual threads (JDK 21+), otherwise
+   * null. Looked up reflectively so the library still builds and runs on JDK 17.
+   */
+  static ExecutorService virtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Offset into the period at which a fixed-rate job first fires, derived from the job name, target
+   * and params so the same job lands on the same phase after every restart while different jobs
+   * spread evenly over the period. One job registered per device, told apart only by its params,
+   * gets a phase per device; params should have stable hash codes (strings, numbers) for the phase
+   * to survive restarts.
+   */
+  static long phaseMs(PollingJob job, JobConfig cfg, long periodMs) {
+    if (periodMs <= 1) return 0;
+    TargetSpec target = cfg.target();
+    long h = job.name().hashCode();
+    if (target != null) {
+      h = h * 31 + String.valueOf(target.host()).hashCode();
+      h = h * 31 + target.port();
+    }
+    if (cfg.params() != null) {
+      h = h * 31 + cfg.params().hashCode();
+    }
+    // Spread nearby hash codes (similar names) across the whole period
+    h *= 0x9E3779B97F4A7C15L;
+    h ^= h >>> 32;
+    return Math.floorMod(h, periodMs);
+  }
+
+  static boolean isCron(String cronExpression) {
+    return cronExpression != null && !cronExpression.trim().isEmpty();
+  }
+
+  /** The compiled expression, or null when there is none or it is invalid. */
+  CronExpression compileCron(String cronExpression) {
+    if (!isCron(cronExpression)) return null;
+    try {
+      CronExpression cron = CronParser.compile(cronExpression);
+      if (cron.nextAfter(System.currentTimeMillis()) < 0) {
+        throw new IllegalArgumentException("it never fires");
+      }
+      return cron;
+    } catch (IllegalArgumentException e) {
+      log.warning("Invalid cron expression '" + cronExpression + "': " + e.getMessage() +
+                 ". Falling back to 30 second interval.");
+      return null;
+    }
+  }
+
+  Handle handle(PollingJob job, JobConfig cfg) {
+    return new Handle(job, cfg);
+  }
+
+  /** Default for jobs whose {@link JobConfig} does not set an overrun policy. */
+  void setOverrunPolicy(OverrunPolicy overrunPolicy) {
+    this.overrunPolicy = overrunPolicy != null ? overrunPolicy : OverrunPolicy.SKIP;
+  }
+
+  /** Default bound on queued runs for {@link OverrunPolicy#CATCH_UP} jobs. */
+  void setMaxCatchUp(int maxCatchUp) {
+    this.maxCatchUp = Math.max(1, maxCatchUp);
+  }
+
+  /** Runs dropped because the job was still running, per its overrun policy. */
+  long skippedRuns() { return skipped.sum(); }
+
+  /** Runs that started after their slot because the previous run overran. */
+  long lateRuns() { return late.sum(); }
+
+  /** Runs not started because {@code maxConcurrent} executions were going. */
+  long rejectedRuns() { return rejected.sum(); }
+
+  /** Drops the job's queued runs and ignores later fires; a run in progress completes. */
+  void cancel(Handle handle) {
+    handle.cancelled = true;
+    handle.pending.set(0);
+  }
+
+  /** Starts one execution of the job, or applies its overrun policy if it is still running. */
+  void fire(Handle handle) {
+    if (handle.cancelled) return;
+    if (!handle.running.compareAndSet(false, true)) {
+      if (!handle.queueMissed()) {
+        skipped.increment();
+        return;
+      }
+      // The running execution may have finished before the run was queued
+      if (handle.pending.get() == 0 || !handle.running.compareAndSet(false, true)) {
+        return;
+      }
+      if (!handle.takePending()) {
+        handle.running.set(false);
+        return;
+      }
+      late.increment();
+    }
+    boolean acquired = permits != null && !waitForPermit;
+    if (acquired && !permits.tryAcquire()) {
+      handle.pending.set(0);
+      handle.running.set(false);
+      rejected.increment();
+      return;
+    }
+    try {
+      executor.execute(() -> {
+        try {
+          if (permits != null && !acquired) permits.acquire();
+        } catch (InterruptedException e) {
+          handle.pending.set(0);
+          handle.running.set(false);
+          Thread.currentThread().interrupt();
+          return;
+        }
+        try {
+          runAll(handle);
+        } finally {
+          if (permits != null) permits.release();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      if (acquired) permits.release();
+      handle.pending.set(0);
+      handle.running.set(false);
+    }
+  }
+
+  /** Runs the job, then any runs queued meanwhile, back to back. */
+  private void runAll(Handle handle) {
+    do {
+      try {
+        handle.job.execute(handle.context);
+      } catch (Exception ex) {
+        log.warning("Job failed: " + handle.job.name() + " at " + Instant.now() + " - " + ex.getMessage());
+      }
+    } while (next(handle));
+  }
+
+  /** Whether a queued run follows on this thread; otherwise releases the job. */
+  private boolean next(Handle handle) {
+    while (true) {
+      if (handle.takePending()) {
+        late.increment();
+        return true;
+      }
+      handle.running.set(false);
+      // A run queued after takePending() but before the release would otherwise wait for the next fire
+      if (handle.pending.get() == 0 || !handle.running.compareAndSet(false, true)) {
+        return false;
+      }
+    }
+  }
+
+  /** Per-registration state: the job, its context and whether an execution is in progress. */
+  final class Handle {
+    final PollingJob job;
+    final JobConfig cfg;
+    final JobContext context;
+    final AtomicBoolean running = new AtomicBoolean();
+    // Runs queued while running, bounded by the overrun policy
+    final AtomicInteger pending = new AtomicInteger();
+    volatile boolean cancelled;
+    private final OverrunPolicy policy;
+    private final int catchUpLimit;
+
+    private Handle(PollingJob job, JobConfig cfg) {
+      this.job = job;
+      this.cfg = cfg;
+      this.policy = cfg.overrun() != null ? cfg.overrun() : overrunPolicy;
+      this.catchUpLimit = cfg.maxCatchUp() > 0 ? cfg.maxCatchUp() : maxCatchUp;
+      this.context = new JobContext() {
+        @Override public Map<String, Object> params() { return cfg.params(); }
+        @Override public SnmpClient client() { return client; }
+        @Override public Logger logger() { return log; }
+        @Override public void recordMetric(String key, double value) { /* no-op stub */ }
+      };
+    }
+
+    boolean isRunning() { return running.get(); }
+
+    /** Queues a run that came due while running, or returns false if the policy drops it. */
+    boolean queueMissed() {
+      switch (policy) {
+        case COALESCE:
+          return pending.compareAndSet(0, 1);
+        case CATCH_UP:
+          for (int n = pending.get(); n < catchUpLimit; n = pending.get()) {
+            if (pending.compareAndSet(n, n + 1)) return true;
+          }
+          return false;
+        default:
+          return false;
+      }
+    }
+
+    boolean takePending() {
+      for (int n = pending.get(); n > 0; n = pending.get()) {
+        if (pending.compareAndSet(n, n - 1)) return true;
+      }
+      return false;
+    }
+  }
+}
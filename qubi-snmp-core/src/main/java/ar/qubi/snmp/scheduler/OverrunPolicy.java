@@ -0,0 +1,19 @@
+package ar.qubi.snmp.scheduler;
+
+import java.util.Locale;
+
+/** What to do with runs that come due while the previous run of the same job is still going. */
+public enum OverrunPolicy {
+  /** Drop them. */
+  SKIP,
+  /** Run once more as soon as the current run ends, however many were missed. */
+  COALESCE,
+  /** Run each missed one back to back after the current run, up to a limit; drop the rest. */
+  CATCH_UP;
+
+  /** Accepts the enum name in any case, with {@code -} in place of {@code _}. */
+  public static OverrunPolicy parse(String value) {
+    if (value == null || value.isBlank()) return SKIP;
+    return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+  }
+}
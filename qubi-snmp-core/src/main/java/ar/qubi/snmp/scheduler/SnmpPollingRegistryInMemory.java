@@ -1,83 +1,191 @@
 package ar.qubi.snmp.scheduler;
 
 import ar.qubi.snmp.client.SnmpClient;
-import java.time.Instant;
-import java.time.ZonedDateTime;
-import java.time.temporal.ChronoUnit;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.io.Closeable;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.*;
 import java.util.logging.Logger;
 
-public class SnmpPollingRegistryInMemory implements SnmpPollingRegistry {
+public class SnmpPollingRegistryInMemory implements SnmpPollingRegistry, MeterBinder, Closeable {
+  /** Where job executions run. */
+  public enum Mode {
+    /** Virtual threads when the runtime has them, otherwise the scheduler pool. */
+    AUTO,
+    /** One virtual thread per execution; falls back to the scheduler pool before JDK 21. */
+    VIRTUAL,
+    /** On the scheduler pool threads. */
+    PLATFORM;
+
+    public static Mode parse(String value) {
+      if (value == null || value.isBlank()) return AUTO;
+      return valueOf(value.trim().toUpperCase(Locale.ROOT));
+    }
+  }
+
   private final ScheduledExecutorService exec;
-  private final SnmpClient client;
-  private final Map<String,ScheduledFuture<?>> tasks = new ConcurrentHashMap<>();
+  // Owned by this registry when created for VIRTUAL/AUTO mode
+  private final ExecutorService jobExecutor;
+  private final JobRunner runner;
+  private final Map<String,Scheduled> tasks = new ConcurrentHashMap<>();
+  private volatile boolean phaseSpread = true;
+  private volatile long jitterMs;
   private final Logger log = Logger.getLogger(getClass().getName());
 
   public SnmpPollingRegistryInMemory(ScheduledExecutorService exec, SnmpClient client) {
-    this.exec = exec; this.client = client;
+    this(exec, client, Mode.PLATFORM, 0);
+  }
+
+  /**
+   * @param exec          timer that decides when jobs are due; with virtual threads it only needs
+   *                      a thread or two
+   * @param maxConcurrent cap on executions running at once, {@code 0} for no cap; on the scheduler
+   *                      pool a run that finds the cap reached is not started, so it cannot block a
+   *                      timer thread, and is counted in {@link #rejectedRuns()}
+   */
+  public SnmpPollingRegistryInMemory(ScheduledExecutorService exec, SnmpClient client, Mode mode, int maxConcurrent) {
+    this.exec = exec;
+    ExecutorService virtual = mode == Mode.PLATFORM ? null : JobRunner.virtualThreadExecutor();
+    if (virtual == null && mode == Mode.VIRTUAL) {
+      log.warning("Virtual threads are not available on this runtime; running polling jobs on the scheduler pool");
+    }
+    this.jobExecutor = virtual;
+    // On the pool itself, executions are still submitted separately so an overrunning job does not
+    // make the periodic task fire its missed runs back to back
+    this.runner = new JobRunner(client, log, virtual != null ? virtual : exec, maxConcurrent, virtual != null);
+  }
+
+  /** Whether executions run on virtual threads rather than the timer threads. */
+  public boolean isVirtual() { return jobExecutor != null; }
+
+  /**
+   * Starts each fixed-rate job at a stable offset into its period instead of all at once. Applies
+   * to jobs registered afterwards.
+   */
+  public void setPhaseSpread(boolean phaseSpread) { this.phaseSpread = phaseSpread; }
+
+  /** Delays every fixed-rate execution by a random {@code 0..jitterMs}, capped at the period. */
+  public void setJitterMs(long jitterMs) { this.jitterMs = Math.max(0, jitterMs); }
+
+  /** Overrun policy for jobs whose {@link JobConfig} does not set one; {@link OverrunPolicy#SKIP} by default. */
+  public void setOverrunPolicy(OverrunPolicy overrunPolicy) { runner.setOverrunPolicy(overrunPolicy); }
+
+  /** Runs queued at most by {@link OverrunPolicy#CATCH_UP} jobs that do not set their own limit; 3 by default. */
+  public void setMaxCatchUp(int maxCatchUp) { runner.setMaxCatchUp(maxCatchUp); }
+
+  /** Runs dropped because the job was still running. */
+  public long skippedRuns() { return runner.skippedRuns(); }
+
+  /** Runs started after their slot because the previous run overran. */
+  public long lateRuns() { return runner.lateRuns(); }
+
+  /** Runs not started on the scheduler pool because {@code maxConcurrent} executions were going. */
+  public long rejectedRuns() { return runner.rejectedRuns(); }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("qubi.snmp.scheduler.runs.skipped", this, SnmpPollingRegistryInMemory::skippedRuns)
+        .register(registry);
+    FunctionCounter.builder("qubi.snmp.scheduler.runs.late", this, SnmpPollingRegistryInMemory::lateRuns)
+        .register(registry);
+    FunctionCounter.builder("qubi.snmp.scheduler.runs.rejected", this, SnmpPollingRegistryInMemory::rejectedRuns)
+        .register(registry);
+  }
+
+  /** Offset of a fixed-rate job's runs into its period, or {@code -1} for cron or unknown jobs. */
+  public long phaseMs(String jobId) {
+    Scheduled scheduled = tasks.get(jobId);
+    return scheduled != null ? scheduled.phaseMs : -1;
   }
 
   @Override public String register(PollingJob job, JobConfig cfg) {
     String id = job.name() + "-" + UUID.randomUUID();
-    
-    Runnable task = () -> {
-      try {
-        job.execute(new JobContext() {
-          @Override public java.util.Map<String, Object> params() { return cfg.params(); }
-          @Override public SnmpClient client() { return client; }
-          @Override public Logger logger() { return log; }
-          @Override public void recordMetric(String key, double value) { /* no-op stub */ }
-        });
-      } catch (Exception ex) {
-        log.warning("Job failed: " + job.name() + " at " + Instant.now() + " - " + ex.getMessage());
-      }
-    };
-    
-    ScheduledFuture<?> f;
+    JobRunner.Handle handle = runner.handle(job, cfg);
+    Runnable task = () -> runner.fire(handle);
     
     // Use cron expression if provided, otherwise fall back to fixed rate
-    if (cfg.cron() != null && !cfg.cron().trim().isEmpty()) {
-      f = scheduleCronJob(task, cfg.cron());
+    CronExpression cron = runner.compileCron(cfg.cron());
+    Scheduled scheduled;
+    if (cron != null) {
+      scheduled = new Scheduled(handle, -1);
+      tasks.put(id, scheduled);
+      scheduleCronJob(scheduled, task, cron);
     } else {
-      long periodMs = (cfg.fixedRate() == null ? java.time.Duration.ofSeconds(30) : cfg.fixedRate()).toMillis();
-      f = exec.scheduleAtFixedRate(task, 0, periodMs, TimeUnit.MILLISECONDS);
+      java.time.Duration rate = cfg.fixedRate() == null || JobRunner.isCron(cfg.cron())
+          ? java.time.Duration.ofSeconds(30) : cfg.fixedRate();
+      long periodMs = rate.toMillis();
+      long phase = phaseSpread ? JobRunner.phaseMs(job, cfg, periodMs) : 0;
+      long jitter = Math.min(jitterMs, periodMs);
+      Runnable fire = jitter > 0
+          ? () -> exec.schedule(task, ThreadLocalRandom.current().nextLong(jitter), TimeUnit.MILLISECONDS)
+          : task;
+      scheduled = new Scheduled(handle, phase);
+      scheduled.future = exec.scheduleAtFixedRate(fire, phase, periodMs, TimeUnit.MILLISECONDS);
+      tasks.put(id, scheduled);
     }
-    
-    tasks.put(id, f);
     return id;
   }
-  
-  private ScheduledFuture<?> scheduleCronJob(Runnable task, String cronExpression) {
-    return exec.schedule(new Runnable() {
+
+  private void scheduleCronJob(Scheduled scheduled, Runnable task, CronExpression cron) {
+    scheduleNext(scheduled, new Runnable() {
       @Override
       public void run() {
         try {
           task.run();
         } finally {
           // Schedule next execution based on cron expression
-          long nextDelayMs = getNextDelayFromCron(cronExpression);
-          if (nextDelayMs > 0) {
-            exec.schedule(this, nextDelayMs, TimeUnit.MILLISECONDS);
-          }
+          scheduleNext(scheduled, this, cron);
         }
       }
-    }, getNextDelayFromCron(cronExpression), TimeUnit.MILLISECONDS);
+    }, cron);
   }
-  
-  private long getNextDelayFromCron(String cronExpression) {
-    try {
-      return CronParser.getNextDelayMillis(cronExpression);
-    } catch (Exception e) {
-      log.warning("Invalid cron expression '" + cronExpression + "': " + e.getMessage() + 
-                 ". Falling back to 30 second interval.");
-      return 30000; // 30 seconds fallback
+
+  private void scheduleNext(Scheduled scheduled, Runnable cronTask, CronExpression cron) {
+    long nextDelayMs = cron.delayAfter(System.currentTimeMillis());
+    if (scheduled.cancelled) return;
+    if (nextDelayMs < 0) {
+      tasks.values().remove(scheduled);
+      return;
     }
+    scheduled.future = exec.schedule(cronTask, nextDelayMs, TimeUnit.MILLISECONDS);
+    // cancel() may have run between the check and the assignment
+    if (scheduled.cancelled) scheduled.future.cancel(false);
   }
 
   @Override public boolean cancel(String jobId) {
-    var f = tasks.remove(jobId);
-    return f != null && f.cancel(true);
+    var scheduled = tasks.remove(jobId);
+    if (scheduled == null) return false;
+    scheduled.cancelled = true;
+    runner.cancel(scheduled.handle);
+    var f = scheduled.future;
+    if (f != null) f.cancel(true);
+    return true;
+  }
+
+  /** Cancels all jobs and stops the virtual-thread executor, if any. The timer is left to its owner. */
+  @Override public void close() {
+    for (String id : tasks.keySet()) {
+      cancel(id);
+    }
+    if (jobExecutor != null) {
+      jobExecutor.shutdownNow();
+    }
+  }
+
+  /** The current future of a job; cron jobs replace it after every run. */
+  private static final class Scheduled {
+    final JobRunner.Handle handle;
+    final long phaseMs;
+    volatile ScheduledFuture<?> future;
+    volatile boolean cancelled;
+
+    Scheduled(JobRunner.Handle handle, long phaseMs) {
+      this.handle = handle;
+      this.phaseMs = phaseMs;
+    }
   }
 }
@@ -0,0 +1,315 @@
+package ar.qubi.snmp.scheduler;
+
+import ar.qubi.snmp.client.SnmpClient;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+/**
+ * {@link SnmpPollingRegistry} for very large numbers of schedules. Jobs sit in a hashed timing
+ * wheel driven by a single thread instead of a {@link ScheduledExecutorService} heap: registering
+ * and cancelling are O(1) and allocate nothing beyond the job's own entry, and every job due in
+ * the same tick is handed to the executor in one pass. Times are rounded up to {@code tickMs}.
+ * <p>
+ * Executions never run on the wheel thread. They go to virtual threads, or to a fixed pool of
+ * {@code platformThreads} when virtual threads are unavailable or {@link SnmpPollingRegistryInMemory.Mode#PLATFORM}
+ * is chosen.
+ */
+public class SnmpPollingRegistryTimingWheel implements SnmpPollingRegistry, MeterBinder, Closeable {
+  private final Logger log = Logger.getLogger(getClass().getName());
+
+  private final long tickMs;
+  private final Bucket[] wheel;
+  private final int mask;
+  private final ExecutorService jobExecutor;
+  private final JobRunner runner;
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  // Registrations and cancellations are applied by the wheel thread at the next tick
+  private final Queue<Entry> added = new ConcurrentLinkedQueue<>();
+  private final Queue<Entry> cancelled = new ConcurrentLinkedQueue<>();
+  private final List<Entry> due = new ArrayList<>();
+  // Milliseconds since the wheel started
+  private final LongSupplier clock;
+  // Null when ticks are driven by advance() calls
+  private final Thread thread;
+  private volatile boolean phaseSpread = true;
+  private volatile long jitterMs;
+  private volatile boolean running = true;
+  // Owned by the wheel thread
+  private long tick;
+
+  public SnmpPollingRegistryTimingWheel(SnmpClient client) {
+    this(client, 100, 512, SnmpPollingRegistryInMemory.Mode.AUTO, 0, 4);
+  }
+
+  /**
+   * @param tickMs          wheel resolution
+   * @param wheelSize       slots per revolution, rounded up to a power of two; schedules longer
+   *                        than {@code tickMs * wheelSize} wait out extra revolutions
+   * @param maxConcurrent   cap on executions running at once, {@code 0} for no cap
+   * @param platformThreads executor size when jobs do not run on virtual threads
+   */
+  public SnmpPollingRegistryTimingWheel(SnmpClient client, long tickMs, int wheelSize,
+                                        SnmpPollingRegistryInMemory.Mode mode, int maxConcurrent,
+                                        int platformThreads) {
+    this(client, tickMs, wheelSize, jobExecutor(mode, platformThreads), elapsedSince(System.nanoTime()),
+        maxConcurrent, true);
+  }
+
+  /** For tests: no wheel thread; ticks are driven by {@link #advance()} against {@code clock}. */
+  SnmpPollingRegistryTimingWheel(SnmpClient client, long tickMs, int wheelSize, ExecutorService jobExecutor,
+                                 LongSupplier clock) {
+    this(client, tickMs, wheelSize, jobExecutor, clock, 0, false);
+  }
+
+  private SnmpPollingRegistryTimingWheel(SnmpClient client, long tickMs, int wheelSize, ExecutorService jobExecutor,
+                                         LongSupplier clock, int maxConcurrent, boolean startThread) {
+    this.tickMs = Math.max(1, tickMs);
+    int size = Integer.highestOneBit(Math.max(1, Math.min(wheelSize, 1 << 20)) * 2 - 1);
+    this.wheel = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      wheel[i] = new Bucket();
+    }
+    this.mask = size - 1;
+    this.clock = clock;
+    this.jobExecutor = jobExecutor;
+    this.runner = new JobRunner(client, log, jobExecutor, maxConcurrent, true);
+    if (startThread) {
+      this.thread = new Thread(this::run, "qubi-snmp-timing-wheel");
+      thread.setDaemon(true);
+      thread.start();
+    } else {
+      this.thread = null;
+    }
+  }
+
+  private static ExecutorService jobExecutor(SnmpPollingRegistryInMemory.Mode mode, int platformThreads) {
+    ExecutorService executor = mode == SnmpPollingRegistryInMemory.Mode.PLATFORM ? null : JobRunner.virtualThreadExecutor();
+    if (executor == null) {
+      if (mode == SnmpPollingRegistryInMemory.Mode.VIRTUAL) {
+        Logger.getLogger(SnmpPollingRegistryTimingWheel.class.getName())
+            .warning("Virtual threads are not available on this runtime; running polling jobs on a platform pool");
+      }
+      AtomicInteger n = new AtomicInteger();
+      executor = Executors.newFixedThreadPool(Math.max(1, platformThreads), r -> {
+        Thread t = new Thread(r, "qubi-snmp-poller-" + n.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      });
+    }
+    return executor;
+  }
+
+  private static LongSupplier elapsedSince(long startNanos) {
+    return () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+
+  /** See {@link SnmpPollingRegistryInMemory#setPhaseSpread(boolean)}. */
+  public void setPhaseSpread(boolean phaseSpread) { this.phaseSpread = phaseSpread; }
+
+  /** See {@link SnmpPollingRegistryInMemory#setJitterMs(long)}. */
+  public void setJitterMs(long jitterMs) { this.jitterMs = Math.max(0, jitterMs); }
+
+  /** See {@link SnmpPollingRegistryInMemory#setOverrunPolicy(OverrunPolicy)}. */
+  public void setOverrunPolicy(OverrunPolicy overrunPolicy) { runner.setOverrunPolicy(overrunPolicy); }
+
+  /** See {@link SnmpPollingRegistryInMemory#setMaxCatchUp(int)}. */
+  public void setMaxCatchUp(int maxCatchUp) { runner.setMaxCatchUp(maxCatchUp); }
+
+  /** Runs dropped because the job was still running. */
+  public long skippedRuns() { return runner.skippedRuns(); }
+
+  /** Runs started after their slot because the previous run overran. */
+  public long lateRuns() { return runner.lateRuns(); }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("qubi.snmp.scheduler.runs.skipped", this, SnmpPollingRegistryTimingWheel::skippedRuns)
+        .register(registry);
+    FunctionCounter.builder("qubi.snmp.scheduler.runs.late", this, SnmpPollingRegistryTimingWheel::lateRuns)
+        .register(registry);
+  }
+
+  /** Offset of a fixed-rate job's runs into its period, or {@code -1} for cron or unknown jobs. */
+  public long phaseMs(String jobId) {
+    Entry e = entries.get(jobId);
+    return e != null && e.cron == null ? e.phaseMs : -1;
+  }
+
+  /** Jobs currently registered. */
+  public int size() { return entries.size(); }
+
+  @Override public String register(PollingJob job, JobConfig cfg) {
+    String id = job.name() + "-" + UUID.randomUUID();
+    Entry e = new Entry(runner.handle(job, cfg));
+    long now = elapsedMs();
+    e.cron = runner.compileCron(cfg.cron());
+    if (e.cron != null) {
+      e.deadlineMs = now + Math.max(0, e.cron.delayAfter(System.currentTimeMillis()));
+    } else {
+      Duration rate = cfg.fixedRate() == null || JobRunner.isCron(cfg.cron()) ? Duration.ofSeconds(30) : cfg.fixedRate();
+      e.periodMs = Math.max(1, rate.toMillis());
+      e.phaseMs = phaseSpread ? JobRunner.phaseMs(job, cfg, e.periodMs) : 0;
+      e.baseMs = now + e.phaseMs;
+      e.deadlineMs = e.baseMs + jitter(e.periodMs);
+    }
+    entries.put(id, e);
+    added.add(e);
+    return id;
+  }
+
+  @Override public boolean cancel(String jobId) {
+    Entry e = entries.remove(jobId);
+    if (e == null) return false;
+    e.cancelled = true;
+    runner.cancel(e.handle);
+    cancelled.add(e);
+    return true;
+  }
+
+  /** Stops the wheel and the job executor; running executions are interrupted. */
+  @Override public void close() {
+    running = false;
+    if (thread != null) {
+      thread.interrupt();
+      try {
+        thread.join(5000);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    entries.clear();
+    jobExecutor.shutdownNow();
+  }
+
+  private void run() {
+    while (running) {
+      long sleepMs = tick * tickMs - elapsedMs();
+      if (sleepMs > 0) {
+        try {
+          Thread.sleep(sleepMs);
+        } catch (InterruptedException ex) {
+          continue;
+        }
+      }
+      try {
+        advance();
+      } catch (RuntimeException ex) {
+        log.warning("Timing wheel tick failed: " + ex.getMessage());
+      }
+    }
+  }
+
+  /** Applies pending registrations and cancellations, then fires everything due in this tick. */
+  void advance() {
+    Entry e;
+    while ((e = cancelled.poll()) != null) {
+      if (e.bucket != null) e.bucket.remove(e);
+    }
+    while ((e = added.poll()) != null) {
+      if (!e.cancelled) place(e, tick);
+    }
+    Bucket bucket = wheel[(int) (tick & mask)];
+    for (e = bucket.head; e != null; ) {
+      Entry next = e.next;
+      if (e.rounds <= 0) {
+        bucket.remove(e);
+        due.add(e);
+      } else {
+        e.rounds--;
+      }
+      e = next;
+    }
+    tick++;
+    for (Entry d : due) {
+      if (d.cancelled) continue;
+      runner.fire(d.handle);
+      reschedule(d);
+    }
+    due.clear();
+  }
+
+  private void reschedule(Entry e) {
+    if (e.cron != null) {
+      long delay = e.cron.delayAfter(System.currentTimeMillis());
+      if (delay < 0) {
+        entries.values().remove(e);
+        return;
+      }
+      e.deadlineMs = elapsedMs() + delay;
+    } else {
+      e.baseMs += e.periodMs;
+      e.deadlineMs = e.baseMs + jitter(e.periodMs);
+    }
+    // The current tick has been processed; the earliest slot left is the next one
+    place(e, tick);
+  }
+
+  private void place(Entry e, long fromTick) {
+    long target = Math.max((e.deadlineMs + tickMs - 1) / tickMs, fromTick);
+    e.rounds = (target - fromTick) / wheel.length;
+    wheel[(int) (target & mask)].add(e);
+  }
+
+  private long jitter(long periodMs) {
+    long jitter = Math.min(jitterMs, periodMs);
+    return jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter) : 0;
+  }
+
+  private long elapsedMs() {
+    return clock.getAsLong();
+  }
+
+  private static final class Entry {
+    final JobRunner.Handle handle;
+    CronExpression cron;
+    long periodMs;
+    long phaseMs;
+    // Unjittered start of the current period, ms since the wheel started
+    long baseMs;
+    long deadlineMs;
+    long rounds;
+    volatile boolean cancelled;
+    // Bucket links, touched by the wheel thread only
+    Bucket bucket;
+    Entry prev;
+    Entry next;
+
+    Entry(JobRunner.Handle handle) {
+      this.handle = handle;
+    }
+  }
+
+  /** Intrusive doubly linked list, so removal needs no search. */
+  private static final class Bucket {
+    Entry head;
+    Entry tail;
+
+    void add(Entry e) {
+      e.bucket = this;
+      e.prev = tail;
+      e.next = null;
+      if (tail == null) head = e; else tail.next = e;
+      tail = e;
+    }
+
+    void remove(Entry e) {
+      if (e.prev == null) head = e.next; else e.prev.next = e.next;
+      if (e.next == null) tail = e.prev; else e.next.prev = e.prev;
+      e.prev = null;
+      e.next = null;
+      e.bucket = null;
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package ar.qubi.snmp.traps;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** INFORM acknowledgement counters, kept by {@link SnmpTrapServer} across restarts of the receiver. */
+final class InformStats {
+  final LongAdder acknowledged = new LongAdder();
+  final LongAdder failed = new LongAdder();
+  final LongAdder ackNanos = new LongAdder();
+
+  void recordAck(long nanos) {
+    acknowledged.increment();
+    ackNanos.add(nanos);
+  }
+}
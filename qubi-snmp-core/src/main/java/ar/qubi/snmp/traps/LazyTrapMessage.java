@@ -0,0 +1,143 @@
+package ar.qubi.snmp.traps;
+
+import ar.qubi.snmp.api.TrapMessage;
+import ar.qubi.snmp.api.Var;
+import ar.qubi.snmp.client.Snmp4jValues;
+import ar.qubi.snmp.mib.MibLookup;
+import org.snmp4j.PDU;
+import org.snmp4j.PDUv1;
+import org.snmp4j.smi.Address;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.Variable;
+import org.snmp4j.smi.VariableBinding;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * {@link TrapMessage} backed by the decoded PDU. The sender, community/user, trap OID and
+ * variables are only converted when first read, so traps that are filtered out or deduplicated
+ * on their trap OID never have their variables converted. Racing first reads may both compute
+ * a value; they compute the same one.
+ */
+final class LazyTrapMessage extends TrapMessage {
+  // snmpTrapOID.0 (v2/v3), usually the second binding after sysUpTime.0
+  private static final OID SNMP_TRAP_OID = new OID("1.3.6.1.6.3.1.1.4.1.0");
+  private static final String SNMP_TRAPS_BASE = "1.3.6.1.6.3.1.1.5";
+
+  private final PDU pdu;
+  private final Address peer;
+  private final OctetString securityName;
+  private volatile String remoteAddress;
+  private volatile String communityOrUser;
+  private volatile String trapOid;
+  private volatile List<Var> variables;
+  // Set on traps replayed by a TrapSpool; run once the dispatcher has finished the trap
+  private volatile Runnable onDispatched;
+
+  LazyTrapMessage(long receivedAtMillis, String version, Address peer, OctetString securityName, PDU pdu,
+                  Supplier<MibLookup> mib) {
+    super(receivedAtMillis, version, mib);
+    this.pdu = pdu;
+    this.peer = peer;
+    this.securityName = securityName;
+  }
+
+  PDU pdu() { return pdu; }
+
+  Address peer() { return peer; }
+
+  OctetString securityName() { return securityName; }
+
+  void onDispatched(Runnable callback) { this.onDispatched = callback; }
+
+  /** Called by the {@link TrapDispatcher} once every listener has returned. */
+  void dispatched() {
+    Runnable callback = onDispatched;
+    if (callback != null) {
+      onDispatched = null;
+      callback.run();
+    }
+  }
+
+  @Override
+  public String remoteAddress() {
+    String s = remoteAddress;
+    if (s == null && peer != null) {
+      if (peer instanceof UdpAddress addr && addr.getInetAddress() != null) {
+        s = addr.getInetAddress().getHostAddress() + ":" + addr.getPort();
+      } else {
+        s = peer.toString();
+      }
+      remoteAddress = s;
+    }
+    return s;
+  }
+
+  @Override
+  public String communityOrUser() {
+    String s = communityOrUser;
+    if (s == null && securityName != null) {
+      s = securityName.toString();
+      communityOrUser = s;
+    }
+    return s;
+  }
+
+  @Override
+  public String trapOid() {
+    String s = trapOid;
+    if (s == null) {
+      s = findTrapOid();
+      trapOid = s;
+    }
+    return s;
+  }
+
+  private String findTrapOid() {
+    List<? extends VariableBinding> vbs = pdu.getVariableBindings();
+    if (vbs.size() > 1 && isTrapOid(vbs.get(1))) {
+      return ((OID) vbs.get(1).getVariable()).toDottedString();
+    }
+    for (VariableBinding vb : vbs) {
+      if (isTrapOid(vb)) {
+        return ((OID) vb.getVariable()).toDottedString();
+      }
+    }
+    if (pdu instanceof PDUv1 v1) {
+      int generic = v1.getGenericTrap();
+      if (generic != PDUv1.ENTERPRISE_SPECIFIC) {
+        // Map generic 0..5 -> snmpTraps.1..6
+        return SNMP_TRAPS_BASE + "." + (generic + 1);
+      }
+      if (v1.getEnterprise() != null) {
+        return v1.getEnterprise().toDottedString() + ".0." + v1.getSpecificTrap();
+      }
+    }
+    return null;
+  }
+
+  private static boolean isTrapOid(VariableBinding vb) {
+    Variable value = vb.getVariable();
+    return value instanceof OID && SNMP_TRAP_OID.equals(vb.getOid());
+  }
+
+  @Override
+  public List<Var> variables() {
+    List<Var> vars = variables;
+    if (vars == null) {
+      List<? extends VariableBinding> vbs = pdu.getVariableBindings();
+      List<Var> converted = new ArrayList<>(vbs.size());
+      for (VariableBinding vb : vbs) {
+        converted.add(Snmp4jValues.toUninternedVar(vb));
+      }
+      vars = Collections.unmodifiableList(converted);
+      variables = vars;
+    }
+    return vars;
+  }
+}
@@ -0,0 +1,127 @@
+package ar.qubi.snmp.traps;
+
+import org.snmp4j.TransportStateReference;
+import org.snmp4j.security.SecurityLevel;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.transport.UdpTransportMapping;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * UDP transport on a {@link DatagramChannel} bound with {@code SO_REUSEPORT}. Several of these
+ * can listen on the same port; the kernel spreads incoming datagrams across them by sender, and
+ * each one decodes on its own thread. Responses (INFORM acknowledgements) leave through the
+ * socket the request arrived on.
+ */
+final class ReusePortUdpTransportMapping extends UdpTransportMapping {
+  private final int receiveBufferSize;
+  private final String threadName;
+  private volatile DatagramChannel channel;
+  private volatile Thread listenThread;
+
+  ReusePortUdpTransportMapping(UdpAddress address, int receiveBufferSize, String threadName) {
+    super(address);
+    this.receiveBufferSize = receiveBufferSize;
+    this.threadName = threadName;
+  }
+
+  /** Whether this platform lets UDP sockets share a port with {@code SO_REUSEPORT}. */
+  static boolean isSupported() {
+    try (DatagramChannel probe = DatagramChannel.open()) {
+      return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public synchronized void listen() throws IOException {
+    if (channel != null) {
+      return;
+    }
+    DatagramChannel ch = udpAddress.getInetAddress() instanceof Inet6Address
+        ? DatagramChannel.open(StandardProtocolFamily.INET6)
+        : DatagramChannel.open(StandardProtocolFamily.INET);
+    try {
+      ch.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+      if (receiveBufferSize > 0) {
+        ch.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+      }
+      ch.bind(new InetSocketAddress(udpAddress.getInetAddress(), udpAddress.getPort()));
+    } catch (IOException e) {
+      ch.close();
+      throw e;
+    }
+    channel = ch;
+    Thread t = new Thread(() -> receive(ch), threadName);
+    t.setDaemon(true);
+    listenThread = t;
+    t.start();
+  }
+
+  private void receive(DatagramChannel ch) {
+    ByteBuffer buffer = ByteBuffer.allocate(getMaxInboundMessageSize());
+    while (ch.isOpen()) {
+      try {
+        buffer.clear();
+        SocketAddress from = ch.receive(buffer);
+        if (!(from instanceof InetSocketAddress sender)) {
+          continue;
+        }
+        buffer.flip();
+        // Copied because a multi-threaded dispatcher may decode after the next receive
+        byte[] message = new byte[buffer.remaining()];
+        buffer.get(message);
+        UdpAddress peer = new UdpAddress(sender.getAddress(), sender.getPort());
+        TransportStateReference state = new TransportStateReference(this, udpAddress, null,
+            SecurityLevel.undefined, SecurityLevel.undefined, false, ch);
+        fireProcessMessage(peer, ByteBuffer.wrap(message), state);
+      } catch (ClosedChannelException e) {
+        return;
+      } catch (IOException | RuntimeException e) {
+        System.err.println("[SNMP] Error receiving on " + udpAddress + ": " + e.getMessage());
+      }
+    }
+  }
+
+  @Override
+  public void sendMessage(UdpAddress targetAddress, byte[] message, TransportStateReference tmStateReference,
+                          long timeoutMillis, int maxRetries) throws IOException {
+    DatagramChannel ch = channel;
+    if (ch == null) {
+      throw new IOException("Transport " + udpAddress + " is not listening");
+    }
+    ch.send(ByteBuffer.wrap(message), new InetSocketAddress(targetAddress.getInetAddress(), targetAddress.getPort()));
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    DatagramChannel ch = channel;
+    Thread t = listenThread;
+    channel = null;
+    listenThread = null;
+    if (ch != null) {
+      ch.close();
+    }
+    if (t != null && t != Thread.currentThread()) {
+      try {
+        t.join(1000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  @Override
+  public boolean isListening() {
+    return channel != null;
+  }
+}
@@ -2,6 +2,10 @@ package ar.qubi.snmp.traps;
 
 import java.lang.annotation.*;
 
+/**
+ * Marks a method receiving traps, either one {@code TrapMessage} at a time or as a
+ * {@code List<TrapMessage>} batch.
+ */
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface SnmpTrapListener {
@@ -9,4 +13,8 @@ public @interface SnmpTrapListener {
   String version() default "";
   String community() default "";
   String username() default "";
+  /** Batch listeners only: most traps per call; 0 uses {@code qubi.snmp.traps.batch.max-size}. */
+  int maxBatchSize() default 0;
+  /** Batch listeners only: longest a trap waits for its batch; 0 uses {@code qubi.snmp.traps.batch.max-linger-ms}. */
+  long maxLingerMs() default 0;
 }
@@ -3,22 +3,40 @@ package ar.qubi.snmp.traps;
 import ar.qubi.snmp.autoconfigure.QubiSnmpProperties;
 import ar.qubi.snmp.mib.MibLookup;
 
+import ar.qubi.snmp.api.TrapMessage;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
-public class SnmpTrapServer {
+public class SnmpTrapServer implements MeterBinder {
     private final int port;
     private final TrapDispatcher dispatcher;
+    // Where received traps go; the dispatcher itself or a queue in front of it
+    private final Consumer<TrapMessage> sink;
     private final Supplier<MibLookup> mibLookup;
     private SnmpTrapServerSnmp4j server;
     private final AtomicBoolean running = new AtomicBoolean(false);
     private final QubiSnmpProperties.Traps.Security security;
+    private int sockets = 1;
+    private int receiveBufferSize = 0;
+    private final InformStats informStats = new InformStats();
     public SnmpTrapServer(int port, QubiSnmpProperties.Traps.Security security, Supplier<MibLookup> mibLookup,TrapDispatcher dispatcher) {
+        this(port, security, mibLookup, dispatcher, dispatcher);
+    }
+
+    public SnmpTrapServer(int port, QubiSnmpProperties.Traps.Security security, Supplier<MibLookup> mibLookup,
+                          TrapDispatcher dispatcher, Consumer<TrapMessage> sink) {
         this.port = port;
         this.security = security;
         this.mibLookup = mibLookup;
         this.dispatcher = dispatcher;
-
+        this.sink = sink;
     }
 
 
@@ -27,7 +45,10 @@ public class SnmpTrapServer {
             return;
         }
         
-        server = new SnmpTrapServerSnmp4j(this.security, port, dispatcher, mibLookup);
+        server = new SnmpTrapServerSnmp4j(this.security, port, sink, mibLookup);
+        server.setSockets(sockets);
+        server.setReceiveBufferSize(receiveBufferSize);
+        server.setInformStats(informStats);
         server.start();
         running.set(true);
     }
@@ -44,6 +65,34 @@ public class SnmpTrapServer {
         running.set(false);
     }
 
+    /** Number of SO_REUSEPORT sockets to receive on; applies from the next {@link #start()}. */
+    public void setSockets(int sockets) {
+        this.sockets = sockets;
+    }
+
+    /** SO_RCVBUF for the receive sockets in bytes, 0 for the OS default. */
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    public long informsAcknowledged() {
+        return informStats.acknowledged.sum();
+    }
+
+    public long informAckFailures() {
+        return informStats.failed.sum();
+    }
+
+    /** INFORM acknowledgements, timed from the decoded INFORM reaching the server until the response is sent. */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionTimer.builder("qubi.snmp.traps.inform.ack", informStats,
+                        stats -> stats.acknowledged.sum(), stats -> stats.ackNanos.sum(), TimeUnit.NANOSECONDS)
+                .register(registry);
+        FunctionCounter.builder("qubi.snmp.traps.inform.ack.failed", informStats, stats -> stats.failed.sum())
+                .register(registry);
+    }
+
     public boolean isRunning() {
         return running.get();
     }
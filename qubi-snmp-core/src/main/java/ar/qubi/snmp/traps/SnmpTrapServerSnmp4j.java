@@ -1,13 +1,13 @@
 package ar.qubi.snmp.traps;
 
 import ar.qubi.snmp.api.TrapMessage;
-import ar.qubi.snmp.api.Var;
 import ar.qubi.snmp.autoconfigure.QubiSnmpProperties;
 import ar.qubi.snmp.mib.MibLookup;
 import org.snmp4j.*;
 import org.snmp4j.mp.MPv1;
 import org.snmp4j.mp.MPv2c;
 import org.snmp4j.mp.MPv3;
+import org.snmp4j.mp.StatusInformation;
 import org.snmp4j.security.*;
 import org.snmp4j.smi.OID;
 import org.snmp4j.smi.OctetString;
@@ -15,7 +15,6 @@ import org.snmp4j.smi.UdpAddress;
 import org.snmp4j.transport.DefaultUdpTransportMapping;
 
 import java.io.IOException;
-import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -26,13 +25,19 @@ public class SnmpTrapServerSnmp4j implements CommandResponder {
   private final int port;
   private final Consumer<TrapMessage> dispatcher;
   private final Supplier<MibLookup> mib;
-  private DefaultUdpTransportMapping transport;
   private Snmp snmp;
   private final AtomicBoolean running = new AtomicBoolean(false);
   private QubiSnmpProperties.Traps.Security v3Security;
   public void setV3Security(QubiSnmpProperties.Traps.Security v3Security) {
     this.v3Security = v3Security;
   }
+  // IPv4 sockets sharing the port through SO_REUSEPORT, each decoding on its own thread
+  private int sockets = 1;
+  private int receiveBufferSize = 0;
+  private InformStats informStats = new InformStats();
+  public void setSockets(int sockets) { this.sockets = Math.max(1, sockets); }
+  void setInformStats(InformStats informStats) { this.informStats = informStats; }
+  public void setReceiveBufferSize(int receiveBufferSize) { this.receiveBufferSize = receiveBufferSize; }
 
   public SnmpTrapServerSnmp4j(QubiSnmpProperties.Traps.Security props,int port, Consumer<TrapMessage> dispatcher, Supplier<MibLookup> mib) {
     this.port = port;
@@ -49,8 +54,26 @@ public class SnmpTrapServerSnmp4j implements CommandResponder {
     if (running.get()) return;
     try {
       // Bind explicitly to IPv4 ANY to avoid accidental IPv6-only binds
-      transport = new DefaultUdpTransportMapping(new UdpAddress("0.0.0.0/" + port));
-      snmp = new Snmp(transport);
+      List<TransportMapping<UdpAddress>> transports = new ArrayList<>();
+      if (sockets > 1 && ReusePortUdpTransportMapping.isSupported()) {
+        for (int i = 0; i < sockets; i++) {
+          transports.add(new ReusePortUdpTransportMapping(new UdpAddress("0.0.0.0/" + port), receiveBufferSize,
+                  "qubi-snmp-trap-receiver-" + i));
+        }
+      } else {
+        if (sockets > 1) {
+          System.out.println("[SNMP] SO_REUSEPORT not supported; trap server uses a single socket");
+        }
+        DefaultUdpTransportMapping single = new DefaultUdpTransportMapping(new UdpAddress("0.0.0.0/" + port));
+        if (receiveBufferSize > 0) {
+          single.setReceiveBufferSize(receiveBufferSize);
+        }
+        transports.add(single);
+      }
+      snmp = new Snmp(transports.get(0));
+      for (int i = 1; i < transports.size(); i++) {
+        snmp.addTransportMapping(transports.get(i));
+      }
 
       // Register message processing models for v1, v2c, and v3
       snmp.getMessageDispatcher().addMessageProcessingModel(new MPv1());
@@ -117,8 +140,11 @@ public class SnmpTrapServerSnmp4j implements CommandResponder {
       snmp.addCommandResponder(this);
 
       // Start listening
-      transport.listen();
-      System.out.println("[SNMP] Trap server listening on UDP 0.0.0.0:" + port + " (IPv4)");
+      for (TransportMapping<UdpAddress> t : transports) {
+        t.listen();
+      }
+      System.out.println("[SNMP] Trap server listening on UDP 0.0.0.0:" + port + " (IPv4"
+              + (transports.size() > 1 ? ", " + transports.size() + " sockets" : "") + ")");
 
       // Optional: also listen on IPv6 if your sender uses it
       try {
@@ -188,7 +214,6 @@ public class SnmpTrapServerSnmp4j implements CommandResponder {
   public synchronized void stop() {
     running.set(false);
     try { if (snmp != null) snmp.close(); } catch (Exception ignored) {}
-    try { if (transport != null) transport.close(); } catch (Exception ignored) {}
   }
 
   public boolean isRunning() { return running.get(); }
@@ -199,9 +224,14 @@ public class SnmpTrapServerSnmp4j implements CommandResponder {
   @Override
   public void processPdu(CommandResponderEvent event) {
     try {
-      var pdu = event.getPDU();
+      PDU pdu = event.getPDU();
       if (pdu == null) return;
 
+      // Acknowledge informs right away so the sender stops retransmitting, whatever happens downstream
+      if (pdu.getType() == PDU.INFORM) {
+        acknowledge(event, pdu);
+      }
+
       // Determine version from message processing model
       String version;
       int mpModel = event.getMessageProcessingModel();
@@ -215,63 +245,13 @@ public class SnmpTrapServerSnmp4j implements CommandResponder {
         version = "unknown";
       }
 
-      // Community (v1/v2c) or username (v3)
-      String communityOrUser = event.getSecurityName() != null ? event.getSecurityName().toString() : null;
-
-      // Remote address as host:port
-      String remoteAddress = null;
-      if (event.getPeerAddress() instanceof UdpAddress addr) {
-        var inet = addr.getInetAddress();
-        String host = inet != null ? inet.getHostAddress() : addr.getInetAddress().toString();
-        remoteAddress = host + ":" + addr.getPort();
-      } else if (event.getPeerAddress() != null) {
-        // Fallback
-        remoteAddress = event.getPeerAddress().toString();
-      }
-
-      // Collect variables and determine trap OID
-      final String OID_SNMP_TRAP_OID = "1.3.6.1.6.3.1.1.4.1.0"; // snmpTrapOID.0 (v2/v3)
-      final String OID_SNMP_TRAPS_BASE = "1.3.6.1.6.3.1.1.5";   // snmpTraps base
-
-      List<Var> variables = new ArrayList<>();
-      String trapOid = null;
-
-      for (var vb : pdu.getVariableBindings()) {
-        String oidStr = vb.getOid().toDottedString();
-        String valueStr = vb.getVariable().toString();
-
-        // v2c/v3 trap OID
-        if (OID_SNMP_TRAP_OID.equals(oidStr) && vb.getVariable() instanceof OID) {
-          trapOid = ((OID) vb.getVariable()).toDottedString();
-        }
-
-        variables.add(new Var(oidStr, valueStr));
-      }
-
-      // v1 trap OID derivation if needed
-      if (trapOid == null && pdu instanceof PDUv1 v1) {
-        String enterprise = v1.getEnterprise() != null ? v1.getEnterprise().toDottedString() : null;
-        int generic = v1.getGenericTrap();
-        int specific = v1.getSpecificTrap();
-
-        if (generic == PDUv1.ENTERPRISE_SPECIFIC) {
-          if (enterprise != null) {
-            trapOid = enterprise + ".0." + specific;
-          }
-        } else {
-          // Map generic 0..5 -> snmpTraps.1..6
-          trapOid = OID_SNMP_TRAPS_BASE + "." + (generic + 1);
-        }
-      }
-
-      // Build the TrapMessage record with real values
-      TrapMessage msg = new TrapMessage(
-              Instant.now(),
-              remoteAddress,
+      // Sender, community/user, trap OID and variables are decoded on first access
+      TrapMessage msg = new LazyTrapMessage(
+              System.currentTimeMillis(),
               version,
-              communityOrUser,
-              trapOid,
-              variables,
+              event.getPeerAddress(),
+              event.getSecurityName() != null ? new OctetString(event.getSecurityName()) : null,
+              pdu,
               mib // keep the supplier passed to this server
       );
 
@@ -282,4 +262,27 @@ public class SnmpTrapServerSnmp4j implements CommandResponder {
       ex.printStackTrace();
     }
   }
+
+  private void acknowledge(CommandResponderEvent event, PDU inform) {
+    long start = System.nanoTime();
+    PDU response = (PDU) inform.clone();
+    response.setType(PDU.RESPONSE);
+    response.setErrorStatus(PDU.noError);
+    response.setErrorIndex(0);
+    try {
+      event.getMessageDispatcher().returnResponsePdu(
+              event.getMessageProcessingModel(),
+              event.getSecurityModel(),
+              event.getSecurityName(),
+              event.getSecurityLevel(),
+              response,
+              event.getMaxSizeResponsePDU(),
+              event.getStateReference(),
+              new StatusInformation());
+      informStats.recordAck(System.nanoTime() - start);
+    } catch (MessageException e) {
+      informStats.failed.increment();
+      System.out.println("[SNMP] Failed to acknowledge INFORM from " + event.getPeerAddress() + ": " + e.getMessage());
+    }
+  }
 }
@@ -0,0 +1,107 @@
+package ar.qubi.snmp.traps;
+
+import ar.qubi.snmp.api.TrapMessage;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects traps into batches for a listener taking {@code List<TrapMessage>}. A batch is handed
+ * over once it holds {@code maxSize} traps or {@code lingerMs} after its first trap, whichever
+ * comes first. Batches are delivered one at a time and in order, so the sink needs no locking.
+ * Full batches are delivered on the thread that adds the last trap; linger flushes are only
+ * triggered by the timer and run on {@code deliverer}, so a slow sink cannot hold up the timer
+ * other batchers share.
+ */
+public class TrapBatcher implements Consumer<TrapMessage>, Closeable {
+  private static final Logger log = Logger.getLogger(TrapBatcher.class.getName());
+
+  private final Consumer<List<TrapMessage>> sink;
+  private final int maxSize;
+  private final long lingerMs;
+  private final ScheduledExecutorService timer;
+  private final Executor deliverer;
+  // Held while taking and delivering a batch, so batches cannot overtake each other
+  private final Object deliverLock = new Object();
+  // Guarded by this
+  private List<TrapMessage> buffer;
+  private ScheduledFuture<?> pendingFlush;
+  private boolean closed;
+
+  public TrapBatcher(Consumer<List<TrapMessage>> sink, int maxSize, long lingerMs, ScheduledExecutorService timer,
+                     Executor deliverer) {
+    this.sink = sink;
+    this.maxSize = Math.max(1, maxSize);
+    this.lingerMs = Math.max(0, lingerMs);
+    this.timer = timer;
+    this.deliverer = deliverer;
+  }
+
+  @Override
+  public void accept(TrapMessage msg) {
+    boolean full;
+    synchronized (this) {
+      if (buffer == null) {
+        buffer = new ArrayList<>(Math.min(maxSize, 64));
+      }
+      buffer.add(msg);
+      full = closed || buffer.size() >= maxSize;
+      if (!full && pendingFlush == null) {
+        pendingFlush = timer.schedule(this::lingerExpired, lingerMs, TimeUnit.MILLISECONDS);
+      }
+    }
+    if (full) {
+      flush();
+    }
+  }
+
+  private void lingerExpired() {
+    try {
+      deliverer.execute(this::flush);
+    } catch (RejectedExecutionException e) {
+      // Shutting down; close() flushes what is left
+    }
+  }
+
+  /** Delivers whatever is buffered now. */
+  public void flush() {
+    synchronized (deliverLock) {
+      List<TrapMessage> batch;
+      synchronized (this) {
+        batch = buffer;
+        buffer = null;
+        if (pendingFlush != null) {
+          pendingFlush.cancel(false);
+          pendingFlush = null;
+        }
+      }
+      if (batch == null || batch.isEmpty()) {
+        return;
+      }
+      try {
+        sink.accept(Collections.unmodifiableList(batch));
+      } catch (RuntimeException e) {
+        log.log(Level.WARNING, "Error delivering a batch of " + batch.size() + " traps", e);
+      }
+    }
+  }
+
+  /** Flushes the buffer; traps arriving afterwards are delivered immediately. */
+  @Override
+  public void close() {
+    synchronized (this) {
+      closed = true;
+    }
+    flush();
+  }
+}
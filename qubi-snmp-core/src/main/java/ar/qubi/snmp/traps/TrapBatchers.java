@@ -0,0 +1,61 @@
+package ar.qubi.snmp.traps;
+
+import ar.qubi.snmp.api.TrapMessage;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Creates {@link TrapBatcher}s sharing one linger timer, and flushes them all on close. Each
+ * batcher gets its own delivery thread for linger flushes, so one slow sink only delays its own
+ * batches.
+ */
+public class TrapBatchers implements Closeable {
+  private final ScheduledExecutorService timer;
+  private final List<TrapBatcher> batchers = new CopyOnWriteArrayList<>();
+  private final List<ExecutorService> deliverers = new CopyOnWriteArrayList<>();
+  private final AtomicInteger count = new AtomicInteger();
+
+  public TrapBatchers() {
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread t = new Thread(r, "qubi-snmp-trap-batcher-timer");
+      t.setDaemon(true);
+      return t;
+    });
+    executor.setRemoveOnCancelPolicy(true);
+    this.timer = executor;
+  }
+
+  public TrapBatcher create(Consumer<List<TrapMessage>> sink, int maxSize, long lingerMs) {
+    String name = "qubi-snmp-trap-batcher-" + count.incrementAndGet();
+    ExecutorService deliverer = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, name);
+      t.setDaemon(true);
+      return t;
+    });
+    TrapBatcher batcher = new TrapBatcher(sink, maxSize, lingerMs, timer, deliverer);
+    deliverers.add(deliverer);
+    batchers.add(batcher);
+    return batcher;
+  }
+
+  public int size() { return batchers.size(); }
+
+  @Override
+  public void close() {
+    for (TrapBatcher batcher : batchers) {
+      batcher.close();
+    }
+    timer.shutdownNow();
+    for (ExecutorService deliverer : deliverers) {
+      deliverer.shutdown();
+    }
+  }
+}
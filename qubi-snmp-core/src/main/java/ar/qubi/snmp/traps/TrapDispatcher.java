@@ -2,19 +2,37 @@ package ar.qubi.snmp.traps;
 
 import ar.qubi.snmp.api.TrapMessage;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
 
+/**
+ * Fans traps out to the registered consumers whose {@link TrapFilter} accepts them. Registration
+ * rebuilds an immutable {@link TrapRoutingIndex}, so dispatching never locks.
+ */
 public class TrapDispatcher implements Consumer<TrapMessage> {
-  private final List<Consumer<TrapMessage>> consumers = new CopyOnWriteArrayList<>();
-  public void add(Consumer<TrapMessage> c) { if (c != null) consumers.add(c); }
-  public void remove(Consumer<TrapMessage> c) { consumers.remove(c); }
-  @Override public void accept(TrapMessage msg) {
-    for (var c : consumers) {
-      try { c.accept(msg); } catch (Exception e) {
-        System.err.println("Error in trap listener: " + e.getMessage());
+  private volatile TrapRoutingIndex index = TrapRoutingIndex.EMPTY;
+  public void add(Consumer<TrapMessage> c) { add(c, TrapFilter.ANY); }
+  public synchronized void add(Consumer<TrapMessage> c, TrapFilter filter) {
+    if (c == null) return;
+    List<TrapRoutingIndex.Route> routes = index.routes();
+    routes.add(new TrapRoutingIndex.Route(c, filter != null ? filter : TrapFilter.ANY));
+    index = TrapRoutingIndex.of(routes);
+  }
+  public synchronized void remove(Consumer<TrapMessage> c) {
+    List<TrapRoutingIndex.Route> routes = index.routes();
+    for (int i = 0; i < routes.size(); i++) {
+      if (routes.get(i).consumer().equals(c)) {
+        routes.remove(i);
+        index = TrapRoutingIndex.of(routes);
+        return;
       }
     }
   }
-  public int size() { return consumers.size(); }
+  @Override public void accept(TrapMessage msg) {
+    try {
+      index.dispatch(msg, e -> System.err.println("Error in trap listener: " + e.getMessage()));
+    } finally {
+      if (msg instanceof LazyTrapMessage lazy) lazy.dispatched();
+    }
+  }
+  public int size() { return index.size(); }
 }
@@ -0,0 +1,78 @@
+package ar.qubi.snmp.traps;
+
+import ar.qubi.snmp.api.Oid;
+import ar.qubi.snmp.api.OidTable;
+import ar.qubi.snmp.api.TrapMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Which traps a listener wants. Empty constraints match anything: {@code oids} are trap OID
+ * prefixes, {@code version} is "1", "2c" or "3", {@code community} applies to v1/v2c traps and
+ * {@code username} to v3 traps (a listener giving both accepts either).
+ */
+public record TrapFilter(List<Oid> oids, String version, String community, String username) {
+  public static final TrapFilter ANY = new TrapFilter(List.of(), null, null, null);
+
+  public TrapFilter {
+    oids = oids != null ? List.copyOf(oids) : List.of();
+    version = normalizeVersion(version);
+    community = blankToNull(community);
+    username = blankToNull(username);
+  }
+
+  public static TrapFilter of(SnmpTrapListener listener) {
+    List<Oid> oids = new ArrayList<>();
+    for (String oid : listener.oids()) {
+      if (!oid.isBlank()) oids.add(OidTable.SHARED.parse(oid.trim()));
+    }
+    return new TrapFilter(oids, listener.version(), listener.community(), listener.username());
+  }
+
+  /** Maps "v1", "v2c", "2", "v3" and similar to "1", "2c" and "3"; blank means any version. */
+  public static String normalizeVersion(String version) {
+    String v = blankToNull(version);
+    if (v == null) return null;
+    v = v.toLowerCase(Locale.ROOT);
+    if (v.startsWith("v")) v = v.substring(1);
+    switch (v) {
+      case "1":
+        return "1";
+      case "2":
+      case "2c":
+        return "2c";
+      case "3":
+        return "3";
+      default:
+        throw new IllegalArgumentException("Unknown SNMP version: " + version);
+    }
+  }
+
+  public boolean isAny() {
+    return oids.isEmpty() && version == null && community == null && username == null;
+  }
+
+  /** Same decision as {@link TrapRoutingIndex}, evaluated for a single filter. */
+  public boolean matches(TrapMessage msg) {
+    if (version != null && !version.equals(msg.version())) return false;
+    if (community != null || username != null) {
+      String expected = "3".equals(msg.version()) ? username : community;
+      if (expected == null || !expected.equals(msg.communityOrUser())) return false;
+    }
+    if (oids.isEmpty()) return true;
+    if (msg.trapOid() == null) return false;
+    Oid trapOid = OidTable.SHARED.lookup(msg.trapOid());
+    for (Oid prefix : oids) {
+      if (trapOid.startsWith(prefix)) return true;
+    }
+    return false;
+  }
+
+  private static String blankToNull(String s) {
+    if (s == null) return null;
+    String t = s.trim();
+    return t.isEmpty() ? null : t;
+  }
+}
@@ -0,0 +1,20 @@
+package ar.qubi.snmp.traps;
+
+import ar.qubi.snmp.api.TrapMessage;
+
+/**
+ * Picks the ordering key of a trap for a partitioned {@link TrapQueue}: traps with equal keys are
+ * delivered in arrival order by the same worker.
+ */
+@FunctionalInterface
+public interface TrapKeyExtractor {
+  /** The sending host, without the source port (agents may send each trap from a new port). */
+  TrapKeyExtractor SOURCE_HOST = msg -> {
+    String address = msg.remoteAddress();
+    if (address == null) return null;
+    int colon = address.lastIndexOf(':');
+    return colon > 0 ? address.substring(0, colon) : address;
+  };
+
+  Object key(TrapMessage msg);
+}
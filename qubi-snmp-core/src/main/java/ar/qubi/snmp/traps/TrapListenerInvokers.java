@@ -0,0 +1,61 @@
+package ar.qubi.snmp.traps;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.Consumer;
+
+/**
+ * Turns an annotated listener method into a plain {@link Consumer}, so dispatching a trap is an
+ * ordinary (inlinable) call instead of {@link Method#invoke}. A class spun by
+ * {@link LambdaMetafactory} is used when the method's class can be looked up from here; otherwise
+ * (e.g. a class from another class loader) a bound {@link MethodHandle} is used.
+ */
+public final class TrapListenerInvokers {
+  private TrapListenerInvokers() {}
+
+  /** Binds {@code method} (one parameter, result ignored) to {@code bean}; static methods ignore the bean. */
+  @SuppressWarnings("unchecked")
+  public static <T> Consumer<T> bind(Object bean, Method method) {
+    if (method.getParameterCount() != 1) {
+      throw new IllegalArgumentException("Listener method must take one argument: " + method);
+    }
+    Class<?> owner = method.getDeclaringClass();
+    boolean isStatic = Modifier.isStatic(method.getModifiers());
+    MethodHandle target;
+    MethodHandles.Lookup lookup;
+    try {
+      lookup = MethodHandles.privateLookupIn(owner, MethodHandles.lookup());
+      target = lookup.unreflect(method);
+    } catch (IllegalAccessException e) {
+      throw new IllegalArgumentException("Cannot access listener method " + method, e);
+    }
+
+    try {
+      CallSite site = LambdaMetafactory.metafactory(
+          lookup,
+          "accept",
+          isStatic ? MethodType.methodType(Consumer.class) : MethodType.methodType(Consumer.class, owner),
+          MethodType.methodType(void.class, Object.class),
+          target,
+          MethodType.methodType(void.class, method.getParameterTypes()[0]));
+      return (Consumer<T>) (isStatic ? site.getTarget().invoke() : site.getTarget().invoke(bean));
+    } catch (Throwable e) {
+      MethodHandle bound = (isStatic ? target : target.bindTo(bean))
+          .asType(MethodType.methodType(void.class, Object.class));
+      return arg -> {
+        try {
+          bound.invokeExact((Object) arg);
+        } catch (RuntimeException | Error ex) {
+          throw ex;
+        } catch (Throwable ex) {
+          throw new IllegalStateException(ex);
+        }
+      };
+    }
+  }
+}
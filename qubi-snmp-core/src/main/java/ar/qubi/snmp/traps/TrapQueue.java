@@ -0,0 +1,183 @@
+package ar.qubi.snmp.traps;
+
+import ar.qubi.snmp.api.TrapMessage;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded hand-off between the SNMP4J receive thread and the trap listeners. The receive thread
+ * only enqueues; worker threads drain the queue into {@code downstream}, so a slow listener no
+ * longer holds up the socket.
+ * <p>
+ * Unpartitioned, all workers share one queue and only a single worker keeps arrival order.
+ * Partitioned by a {@link TrapKeyExtractor}, each worker owns a lane and traps with the same key
+ * always land on the same lane, so they stay in order while different keys run in parallel.
+ */
+public class TrapQueue implements Consumer<TrapMessage>, MeterBinder, Closeable {
+  /** What to do with a trap that arrives while the queue is full. */
+  public enum Overflow {
+    /** Discard the new trap. */
+    DROP,
+    /** Make the receive thread wait for room. */
+    BLOCK,
+    /** Discard the oldest queued trap to make room for the new one. */
+    DROP_OLDEST;
+
+    /** Accepts the enum name in any case, with {@code -} in place of {@code _}. */
+    public static Overflow parse(String value) {
+      if (value == null || value.isBlank()) return DROP;
+      return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+  }
+
+  private static final Logger log = Logger.getLogger(TrapQueue.class.getName());
+
+  private final Consumer<TrapMessage> downstream;
+  private final Overflow overflow;
+  // Null when unpartitioned
+  private final TrapKeyExtractor keyExtractor;
+  private final ArrayBlockingQueue<TrapMessage>[] lanes;
+  private final List<Thread> workers = new ArrayList<>();
+  private final LongAdder received = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private volatile boolean running = true;
+
+  public TrapQueue(Consumer<TrapMessage> downstream, int capacity, int workers, Overflow overflow) {
+    this(downstream, capacity, workers, overflow, null);
+  }
+
+  /**
+   * @param keyExtractor partitions traps over one lane per worker, or {@code null} for a single
+   *                     lane shared by all workers; {@code capacity} is split between the lanes
+   */
+  @SuppressWarnings("unchecked")
+  public TrapQueue(Consumer<TrapMessage> downstream, int capacity, int workers, Overflow overflow,
+                   TrapKeyExtractor keyExtractor) {
+    this.downstream = downstream;
+    this.overflow = overflow;
+    this.keyExtractor = keyExtractor;
+    int threads = Math.max(1, workers);
+    int laneCount = keyExtractor != null ? threads : 1;
+    this.lanes = new ArrayBlockingQueue[laneCount];
+    for (int i = 0; i < laneCount; i++) {
+      lanes[i] = new ArrayBlockingQueue<>(Math.max(1, capacity / laneCount));
+    }
+    for (int i = 0; i < threads; i++) {
+      ArrayBlockingQueue<TrapMessage> lane = lanes[i % laneCount];
+      Thread t = new Thread(() -> drain(lane), "qubi-snmp-trap-worker-" + i);
+      t.setDaemon(true);
+      this.workers.add(t);
+      t.start();
+    }
+  }
+
+  @Override
+  public void accept(TrapMessage msg) {
+    received.increment();
+    if (!running) {
+      dropped.increment();
+      return;
+    }
+    ArrayBlockingQueue<TrapMessage> queue = laneFor(msg);
+    switch (overflow) {
+      case BLOCK:
+        try {
+          queue.put(msg);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          dropped.increment();
+        }
+        break;
+      case DROP_OLDEST:
+        while (!queue.offer(msg)) {
+          if (queue.poll() != null) {
+            dropped.increment();
+          }
+        }
+        break;
+      default:
+        if (!queue.offer(msg)) {
+          dropped.increment();
+        }
+    }
+  }
+
+  private ArrayBlockingQueue<TrapMessage> laneFor(TrapMessage msg) {
+    if (lanes.length == 1) return lanes[0];
+    return lanes[Math.floorMod(Objects.hashCode(keyExtractor.key(msg)), lanes.length)];
+  }
+
+  private void drain(ArrayBlockingQueue<TrapMessage> queue) {
+    while (running || !queue.isEmpty()) {
+      TrapMessage msg;
+      try {
+        msg = queue.poll(100, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        return;
+      }
+      if (msg == null) continue;
+      try {
+        downstream.accept(msg);
+      } catch (RuntimeException e) {
+        log.log(Level.WARNING, "Error dispatching trap from " + msg.remoteAddress(), e);
+      }
+    }
+  }
+
+  /** Traps handed to this queue, including dropped ones. */
+  public long received() { return received.sum(); }
+
+  public long dropped() { return dropped.sum(); }
+
+  public Overflow overflow() { return overflow; }
+
+  public boolean isPartitioned() { return keyExtractor != null; }
+
+  public int depth() {
+    int depth = 0;
+    for (var lane : lanes) depth += lane.size();
+    return depth;
+  }
+
+  public int capacity() {
+    int capacity = 0;
+    for (var lane : lanes) capacity += lane.size() + lane.remainingCapacity();
+    return capacity;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("qubi.snmp.traps.queue.depth", this, TrapQueue::depth).register(registry);
+    Gauge.builder("qubi.snmp.traps.queue.capacity", this, TrapQueue::capacity).register(registry);
+    FunctionCounter.builder("qubi.snmp.traps.queue.received", this, TrapQueue::received).register(registry);
+    FunctionCounter.builder("qubi.snmp.traps.queue.dropped", this, TrapQueue::dropped).register(registry);
+  }
+
+  /** Stops accepting traps and waits briefly for the workers to deliver what is already queued. */
+  @Override
+  public void close() {
+    running = false;
+    for (Thread t : workers) {
+      try {
+        t.join(5000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+}
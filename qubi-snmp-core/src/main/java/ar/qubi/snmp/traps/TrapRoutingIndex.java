@@ -0,0 +1,139 @@
+package ar.qubi.snmp.traps;
+
+import ar.qubi.snmp.api.Oid;
+import ar.qubi.snmp.api.OidTable;
+import ar.qubi.snmp.api.TrapMessage;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Immutable index from trap attributes to the listeners whose {@link TrapFilter} accepts them.
+ * Each dimension (trap OID prefix, version, community/username) yields the set of listener
+ * positions that accept the trap, wildcards included; a trap goes to the intersection.
+ * Finding the OID candidates walks a trie of the registered prefixes, so the cost grows with
+ * the OID length rather than with the number of listeners.
+ */
+final class TrapRoutingIndex {
+  static final TrapRoutingIndex EMPTY = new TrapRoutingIndex(List.of());
+
+  private final List<Consumer<TrapMessage>> consumers;
+  private final List<TrapFilter> filters;
+  private final Node oidRoot = new Node();
+  private final BitSet anyOid = new BitSet();
+  private final Map<String, BitSet> byVersion = new HashMap<>();
+  private final BitSet anyVersion = new BitSet();
+  // "c:" + community for v1/v2c, "u:" + username for v3
+  private final Map<String, BitSet> byCredential = new HashMap<>();
+  private final BitSet anyCredential = new BitSet();
+
+  private TrapRoutingIndex(List<Route> routes) {
+    this.consumers = new ArrayList<>(routes.size());
+    this.filters = new ArrayList<>(routes.size());
+    for (int i = 0; i < routes.size(); i++) {
+      Route route = routes.get(i);
+      TrapFilter filter = route.filter();
+      consumers.add(route.consumer());
+      filters.add(filter);
+
+      if (filter.oids().isEmpty()) {
+        anyOid.set(i);
+      } else {
+        for (Oid prefix : filter.oids()) {
+          if (prefix.size() == 0) anyOid.set(i);
+          else oidRoot.descend(prefix).listeners.set(i);
+        }
+      }
+
+      if (filter.version() == null) {
+        anyVersion.set(i);
+      } else {
+        byVersion.computeIfAbsent(filter.version(), v -> new BitSet()).set(i);
+      }
+
+      if (filter.community() == null && filter.username() == null) {
+        anyCredential.set(i);
+      } else {
+        if (filter.community() != null) {
+          byCredential.computeIfAbsent("c:" + filter.community(), c -> new BitSet()).set(i);
+        }
+        if (filter.username() != null) {
+          byCredential.computeIfAbsent("u:" + filter.username(), c -> new BitSet()).set(i);
+        }
+      }
+    }
+  }
+
+  static TrapRoutingIndex of(List<Route> routes) {
+    return routes.isEmpty() ? EMPTY : new TrapRoutingIndex(routes);
+  }
+
+  int size() { return consumers.size(); }
+
+  /** Delivers {@code msg} to every matching listener, in registration order. */
+  void dispatch(TrapMessage msg, Consumer<RuntimeException> onError) {
+    BitSet matches = match(msg);
+    for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+      try {
+        consumers.get(i).accept(msg);
+      } catch (RuntimeException e) {
+        onError.accept(e);
+      }
+    }
+  }
+
+  BitSet match(TrapMessage msg) {
+    if (consumers.isEmpty()) return new BitSet();
+
+    BitSet result = (BitSet) anyVersion.clone();
+    BitSet version = byVersion.get(msg.version());
+    if (version != null) result.or(version);
+
+    BitSet credential = (BitSet) anyCredential.clone();
+    if (msg.communityOrUser() != null) {
+      BitSet named = byCredential.get(("3".equals(msg.version()) ? "u:" : "c:") + msg.communityOrUser());
+      if (named != null) credential.or(named);
+    }
+    result.and(credential);
+    if (result.isEmpty()) return result;
+
+    BitSet oid = (BitSet) anyOid.clone();
+    if (msg.trapOid() != null && !oidRoot.children.isEmpty()) {
+      Oid trapOid = OidTable.SHARED.lookup(msg.trapOid());
+      Node node = oidRoot;
+      for (int i = 0; i < trapOid.size() && node != null; i++) {
+        node = node.children.get(trapOid.get(i));
+        if (node != null) oid.or(node.listeners);
+      }
+    }
+    result.and(oid);
+    return result;
+  }
+
+  List<Route> routes() {
+    List<Route> routes = new ArrayList<>(consumers.size());
+    for (int i = 0; i < consumers.size(); i++) {
+      routes.add(new Route(consumers.get(i), filters.get(i)));
+    }
+    return routes;
+  }
+
+  record Route(Consumer<TrapMessage> consumer, TrapFilter filter) {}
+
+  private static final class Node {
+    final Map<Integer, Node> children = new HashMap<>();
+    final BitSet listeners = new BitSet();
+
+    Node descend(Oid prefix) {
+      Node node = this;
+      for (int i = 0; i < prefix.size(); i++) {
+        node = node.children.computeIfAbsent(prefix.get(i), arc -> new Node());
+      }
+      return node;
+    }
+  }
+}
@@ -0,0 +1,520 @@
+package ar.qubi.snmp.traps;
+
+import ar.qubi.snmp.api.TrapMessage;
+import ar.qubi.snmp.mib.MibLookup;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.snmp4j.PDU;
+import org.snmp4j.PDUv1;
+import org.snmp4j.ScopedPDU;
+import org.snmp4j.asn1.BERInputStream;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Durable buffer between trap reception and dispatch. Received traps are appended to a log of
+ * fixed-size memory-mapped segment files; a reader thread replays them to {@code downstream}.
+ * The offset file records how far every record has been finished by the {@link TrapDispatcher}
+ * (directly, or behind a {@link TrapQueue}), and traps past it are replayed after the next
+ * {@link #start()}. A queue in between must use {@link TrapQueue.Overflow#BLOCK}, since a
+ * dropped trap would never be finished.
+ * <p>
+ * A record holds the receive time, sender, community/user and the BER encoding of the PDU,
+ * encoded straight into the mapped segment. Nothing is forced to disk per record: the OS writes
+ * the pages back, segments are forced when sealed and on close, and optionally every
+ * {@code forceIntervalMs}. Consumed segments are deleted; beyond {@code maxSegments} the oldest
+ * is deleted even if unread, and its traps are counted as lost.
+ * Only traps decoded by the trap server can be spooled; other messages are passed straight on.
+ */
+public class TrapSpool implements Consumer<TrapMessage>, MeterBinder, Closeable {
+  private static final Logger log = Logger.getLogger(TrapSpool.class.getName());
+  private static final String SEGMENT_SUFFIX = ".seg";
+  // Record length marking the rest of a segment as unused
+  private static final int END_OF_SEGMENT = -1;
+  // Hand-off attempts for one record before it is skipped
+  private static final int MAX_ATTEMPTS = 5;
+
+  private final Path directory;
+  private final int segmentSize;
+  private final int maxSegments;
+  private final long forceIntervalMs;
+  private final Consumer<TrapMessage> downstream;
+  private final Supplier<MibLookup> mib;
+  private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+  private final MappedByteBuffer offsetFile;
+  private final FileChannel offsetChannel;
+
+  // Guarded by this
+  private Segment active;
+  // Logical offset (segment base + position) of the next append; written under this
+  private volatile long writeOffset;
+  // Next record to hand on; only advanced by the reader thread
+  private volatile long readOffset;
+  // Offsets of records handed on but not finished by the dispatcher yet
+  private final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+  // Everything before it has been dispatched; written under inFlight
+  private volatile long committed;
+  // Failed hand-offs of the record at readOffset; reader thread only
+  private int failures;
+  private volatile boolean running;
+  private volatile Thread reader;
+
+  private final LongAdder appended = new LongAdder();
+  private final LongAdder delivered = new LongAdder();
+  private final LongAdder bypassed = new LongAdder();
+  private final LongAdder skipped = new LongAdder();
+  private final LongAdder lostSegments = new LongAdder();
+
+  public TrapSpool(Path directory, int segmentSize, int maxSegments, long forceIntervalMs,
+                   Consumer<TrapMessage> downstream, Supplier<MibLookup> mib) throws IOException {
+    if (downstream instanceof TrapQueue queue && queue.overflow() != TrapQueue.Overflow.BLOCK) {
+      throw new IllegalArgumentException("A trap spool needs a queue with overflow BLOCK, not "
+          + queue.overflow() + ": dropped traps would never be dispatched");
+    }
+    this.directory = directory;
+    this.segmentSize = Math.max(64 * 1024, segmentSize);
+    this.maxSegments = Math.max(2, maxSegments);
+    this.forceIntervalMs = forceIntervalMs;
+    this.downstream = downstream;
+    this.mib = mib;
+    Files.createDirectories(directory);
+
+    offsetChannel = FileChannel.open(directory.resolve("dispatch.offset"),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    offsetFile = offsetChannel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+      for (Path file : files) {
+        String name = file.getFileName().toString();
+        long base = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        segments.put(base, Segment.open(file, base, this.segmentSize));
+      }
+    }
+    long persisted = offsetFile.getLong(0);
+    if (segments.isEmpty()) {
+      active = openSegment(persisted);
+      writeOffset = persisted;
+    } else {
+      active = segments.lastEntry().getValue();
+      int end = recoverEnd(active);
+      if (end == this.segmentSize) {
+        // The last segment was sealed; continue in a new one
+        active = openSegment(active.base + this.segmentSize);
+        end = 0;
+      }
+      writeOffset = active.base + end;
+    }
+    readOffset = Math.max(persisted, segments.firstKey());
+    readOffset = Math.min(readOffset, writeOffset);
+    this.committed = readOffset;
+  }
+
+  /** Starts delivering, beginning with whatever was left undelivered by the previous run. */
+  public synchronized void start() {
+    if (running) return;
+    running = true;
+    reader = new Thread(this::deliverLoop, "qubi-snmp-trap-spool");
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  @Override
+  public void accept(TrapMessage msg) {
+    if (!(msg instanceof LazyTrapMessage trap)) {
+      bypassed.increment();
+      downstream.accept(msg);
+      return;
+    }
+    try {
+      if (!append(trap)) {
+        bypassed.increment();
+        downstream.accept(msg);
+      }
+    } catch (IOException e) {
+      log.log(Level.WARNING, "Cannot spool trap; delivering it directly", e);
+      bypassed.increment();
+      downstream.accept(msg);
+    }
+  }
+
+  // Returns false for a trap larger than a segment
+  private synchronized boolean append(LazyTrapMessage trap) throws IOException {
+    PDU pdu = trap.pdu();
+    byte[] address = null;
+    int port = 0;
+    if (trap.peer() instanceof UdpAddress udp && udp.getInetAddress() != null) {
+      address = udp.getInetAddress().getAddress();
+      port = udp.getPort();
+    }
+    byte[] securityName = trap.securityName() != null ? trap.securityName().getValue() : new byte[0];
+    int pduLength = pdu.getBERLength();
+    int length = Long.BYTES + 1 + 1 + (address != null ? address.length : 0) + Integer.BYTES
+        + Short.BYTES + securityName.length + Integer.BYTES + pduLength;
+    if (Integer.BYTES + length + Integer.BYTES > segmentSize) {
+      return false;
+    }
+
+    int position = (int) (writeOffset - active.base);
+    if (position + Integer.BYTES + length + Integer.BYTES > segmentSize) {
+      roll(position);
+      position = 0;
+    }
+
+    MappedByteBuffer buffer = active.buffer;
+    int p = position + Integer.BYTES;
+    buffer.putLong(p, trap.receivedAtMillis());
+    p += Long.BYTES;
+    buffer.put(p++, versionCode(trap.version()));
+    buffer.put(p++, (byte) (address != null ? address.length : 0));
+    if (address != null) {
+      buffer.put(p, address);
+      p += address.length;
+    }
+    buffer.putInt(p, port);
+    p += Integer.BYTES;
+    buffer.putShort(p, (short) securityName.length);
+    p += Short.BYTES;
+    buffer.put(p, securityName);
+    p += securityName.length;
+    buffer.putInt(p, pduLength);
+    p += Integer.BYTES;
+    pdu.encodeBER(new SliceOutputStream(buffer.slice(p, pduLength)));
+    // The length goes in last: a record cut short by a crash reads as the end of the log
+    buffer.putInt(position, length);
+
+    writeOffset = active.base + position + Integer.BYTES + length;
+    appended.increment();
+    LockSupport.unpark(reader);
+    return true;
+  }
+
+  // Called with the lock held
+  private void roll(int position) throws IOException {
+    active.buffer.putInt(position, END_OF_SEGMENT);
+    active.buffer.force();
+    long nextBase = active.base + segmentSize;
+    active = openSegment(nextBase);
+    writeOffset = nextBase;
+    while (segments.size() > maxSegments) {
+      Map.Entry<Long, Segment> oldest = segments.pollFirstEntry();
+      if (oldest.getKey() + segmentSize > committed) {
+        lostSegments.increment();
+        log.warning("Trap spool full; dropping undelivered segment " + oldest.getKey());
+      }
+      oldest.getValue().delete();
+    }
+  }
+
+  private Segment openSegment(long base) throws IOException {
+    Segment segment = Segment.open(directory.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX)), base, segmentSize);
+    segments.put(base, segment);
+    return segment;
+  }
+
+  // Position after the last complete record of a segment found on disk
+  private int recoverEnd(Segment segment) {
+    int position = 0;
+    while (position + Integer.BYTES <= segmentSize) {
+      int length = segment.buffer.getInt(position);
+      if (length == END_OF_SEGMENT) {
+        return segmentSize;
+      }
+      if (length <= 0 || position + Integer.BYTES + length > segmentSize) {
+        break;
+      }
+      position += Integer.BYTES + length;
+    }
+    return position;
+  }
+
+  private void deliverLoop() {
+    long lastForce = System.currentTimeMillis();
+    while (running) {
+      try {
+        if (!deliverNext()) {
+          LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(50));
+        }
+        if (forceIntervalMs > 0 && System.currentTimeMillis() - lastForce >= forceIntervalMs) {
+          forceActive();
+          lastForce = System.currentTimeMillis();
+        }
+      } catch (RuntimeException e) {
+        log.log(Level.WARNING, "Error delivering spooled trap", e);
+        LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(1));
+      }
+    }
+  }
+
+  // Delivers one record; false when there is nothing to read
+  private boolean deliverNext() {
+    long offset = readOffset;
+    if (offset >= writeOffset) {
+      return false;
+    }
+    Map.Entry<Long, Segment> entry = segments.floorEntry(offset);
+    if (entry == null || entry.getKey() + segmentSize <= offset) {
+      // Our segment was dropped by retention; continue with the oldest one left
+      Long first = segments.isEmpty() ? null : segments.firstKey();
+      advance(first != null && first > offset ? first : offset - Math.floorMod(offset, segmentSize) + segmentSize);
+      return true;
+    }
+    Segment segment = entry.getValue();
+    int position = (int) (offset - segment.base);
+    int length = position + Integer.BYTES <= segmentSize ? segment.buffer.getInt(position) : END_OF_SEGMENT;
+    if (length <= 0) {
+      advance(segment.base + segmentSize);
+      deleteConsumed();
+      return true;
+    }
+    LazyTrapMessage msg = decode(segment.buffer, position + Integer.BYTES, length);
+    if (msg == null) {
+      skipped.increment();
+    } else if (!handOff(offset, msg)) {
+      return true;
+    }
+    advance(offset + Integer.BYTES + length);
+    return true;
+  }
+
+  /**
+   * Passes the record on; false if it should be retried. A record that keeps failing is skipped
+   * after {@link #MAX_ATTEMPTS} attempts so it cannot stall the spool.
+   */
+  private boolean handOff(long offset, LazyTrapMessage msg) {
+    inFlight.add(offset);
+    msg.onDispatched(() -> finished(offset));
+    try {
+      downstream.accept(msg);
+      delivered.increment();
+      failures = 0;
+      return true;
+    } catch (RuntimeException e) {
+      inFlight.remove(offset);
+      if (++failures < MAX_ATTEMPTS) {
+        log.log(Level.WARNING, "Error delivering spooled trap (attempt " + failures + "); retrying", e);
+        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(50L << failures));
+        return false;
+      }
+      log.log(Level.WARNING, "Skipping spooled trap at offset " + offset + " after " + failures + " attempts", e);
+      failures = 0;
+      skipped.increment();
+      return true;
+    }
+  }
+
+  private void finished(long offset) {
+    inFlight.remove(offset);
+    commitDispatched();
+  }
+
+  private LazyTrapMessage decode(MappedByteBuffer buffer, int p, int length) {
+    try {
+      long receivedAt = buffer.getLong(p);
+      p += Long.BYTES;
+      byte version = buffer.get(p++);
+      int addressLength = buffer.get(p++);
+      UdpAddress peer = null;
+      if (addressLength > 0) {
+        byte[] address = new byte[addressLength];
+        buffer.get(p, address);
+        p += addressLength;
+        peer = new UdpAddress(InetAddress.getByAddress(address), buffer.getInt(p));
+      }
+      p += Integer.BYTES;
+      byte[] securityName = new byte[buffer.getShort(p)];
+      p += Short.BYTES;
+      buffer.get(p, securityName);
+      p += securityName.length;
+      int pduLength = buffer.getInt(p);
+      p += Integer.BYTES;
+      PDU pdu = version == 1 ? new PDUv1() : version == 3 ? new ScopedPDU() : new PDU();
+      pdu.decodeBER(new BERInputStream(buffer.slice(p, pduLength)));
+      return new LazyTrapMessage(receivedAt, versionName(version), peer,
+          securityName.length > 0 ? new OctetString(securityName) : null, pdu, mib);
+    } catch (IOException | RuntimeException e) {
+      log.log(Level.WARNING, "Skipping unreadable spooled trap", e);
+      return null;
+    }
+  }
+
+  private void advance(long offset) {
+    readOffset = offset;
+    commitDispatched();
+  }
+
+  // Persists the offset before which every record has been dispatched
+  private void commitDispatched() {
+    synchronized (inFlight) {
+      // Read before the set: a record added meanwhile is at or after this offset
+      long offset = readOffset;
+      Long oldest = inFlight.ceiling(Long.MIN_VALUE);
+      if (oldest != null && oldest < offset) {
+        offset = oldest;
+      }
+      if (offset > committed) {
+        committed = offset;
+        offsetFile.putLong(0, offset);
+      }
+    }
+  }
+
+  private void deleteConsumed() {
+    synchronized (this) {
+      while (segments.size() > 1) {
+        Map.Entry<Long, Segment> oldest = segments.firstEntry();
+        if (oldest.getValue() == active || oldest.getKey() + segmentSize > committed) {
+          break;
+        }
+        segments.remove(oldest.getKey());
+        oldest.getValue().delete();
+      }
+    }
+  }
+
+  private synchronized void forceActive() {
+    active.buffer.force();
+    offsetFile.force();
+  }
+
+  private static byte versionCode(String version) {
+    if ("1".equals(version)) return 1;
+    if ("2c".equals(version)) return 2;
+    if ("3".equals(version)) return 3;
+    return 0;
+  }
+
+  private static String versionName(byte code) {
+    switch (code) {
+      case 1: return "1";
+      case 2: return "2c";
+      case 3: return "3";
+      default: return "unknown";
+    }
+  }
+
+  public long appended() { return appended.sum(); }
+
+  public long delivered() { return delivered.sum(); }
+
+  /** Traps passed on without spooling (not decoded by the trap server, too large, or an I/O error). */
+  public long bypassed() { return bypassed.sum(); }
+
+  public long lostSegments() { return lostSegments.sum(); }
+
+  /** Records skipped because they could not be decoded or kept failing to be handed on. */
+  public long skipped() { return skipped.sum(); }
+
+  /** Bytes appended but not yet dispatched. */
+  public long lagBytes() { return Math.max(0, writeOffset - committed); }
+
+  public int segmentCount() { return segments.size(); }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("qubi.snmp.traps.spool.appended", this, TrapSpool::appended).register(registry);
+    FunctionCounter.builder("qubi.snmp.traps.spool.delivered", this, TrapSpool::delivered).register(registry);
+    FunctionCounter.builder("qubi.snmp.traps.spool.bypassed", this, TrapSpool::bypassed).register(registry);
+    FunctionCounter.builder("qubi.snmp.traps.spool.lost.segments", this, TrapSpool::lostSegments).register(registry);
+    FunctionCounter.builder("qubi.snmp.traps.spool.skipped", this, TrapSpool::skipped).register(registry);
+    Gauge.builder("qubi.snmp.traps.spool.lag", this, TrapSpool::lagBytes).baseUnit("bytes").register(registry);
+    Gauge.builder("qubi.snmp.traps.spool.segments", this, TrapSpool::segmentCount).register(registry);
+  }
+
+  /** Stops the reader and forces the active segment and the offset to disk; the rest is replayed on restart. */
+  @Override
+  public void close() throws IOException {
+    Thread t;
+    synchronized (this) {
+      running = false;
+      t = reader;
+    }
+    if (t != null) {
+      LockSupport.unpark(t);
+      try {
+        t.join(5000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    synchronized (this) {
+      active.buffer.force();
+      offsetFile.force();
+      offsetChannel.close();
+    }
+  }
+
+  private static final class Segment {
+    final Path file;
+    final long base;
+    final MappedByteBuffer buffer;
+
+    private Segment(Path file, long base, MappedByteBuffer buffer) {
+      this.file = file;
+      this.base = base;
+      this.buffer = buffer;
+    }
+
+    static Segment open(Path file, long base, int size) throws IOException {
+      try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+        if (raf.length() < size) {
+          raf.setLength(size);
+        }
+        // The mapping stays valid after the file is closed
+        MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        return new Segment(file, base, buffer);
+      }
+    }
+
+    void delete() {
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException e) {
+        log.log(Level.WARNING, "Cannot delete trap spool segment " + file, e);
+      }
+    }
+  }
+
+  // Writes into a slice of a mapped segment, so the PDU is encoded in place
+  private static final class SliceOutputStream extends OutputStream {
+    private final ByteBuffer target;
+
+    SliceOutputStream(ByteBuffer target) {
+      this.target = target;
+    }
+
+    @Override
+    public void write(int b) {
+      target.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      target.put(b, off, len);
+    }
+  }
+}
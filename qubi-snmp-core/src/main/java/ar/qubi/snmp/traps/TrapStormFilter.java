@@ -0,0 +1,309 @@
+package ar.qubi.snmp.traps;
+
+import ar.qubi.snmp.api.Oid;
+import ar.qubi.snmp.api.OidTable;
+import ar.qubi.snmp.api.TrapMessage;
+import ar.qubi.snmp.api.Var;
+import ar.qubi.snmp.client.Snmp4jValues;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.snmp4j.smi.VariableBinding;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pre-dispatch stage that holds back trap storms. A trap whose fingerprint (source host, trap OID
+ * and the values of the key bindings) was already passed within {@code windowMs} is suppressed.
+ * The slot keeps the key itself and compares it on a fingerprint match, so a hash collision never
+ * suppresses another source's trap. Each source may also be limited by a token bucket. Both tables have a fixed number of slots;
+ * a colliding newcomer takes over the slot, so memory stays bounded at the cost of occasionally
+ * letting a duplicate through. Suppressed traps are counted, and a {@link TrapSuppression}
+ * summary goes to {@code summaries} when the window closes, the slot is reused or the filter closes.
+ */
+public class TrapStormFilter implements Consumer<TrapMessage>, MeterBinder, Closeable {
+  private static final Logger log = Logger.getLogger(TrapStormFilter.class.getName());
+
+  private final Consumer<TrapMessage> downstream;
+  private final Consumer<TrapSuppression> summaries;
+  private final long windowMs;
+  private final List<Oid> keyOids;
+  private final double ratePerMs;
+  private final double burst;
+  private final ScheduledExecutorService sweeper;
+
+  // Guarded by this: duplicate table, one entry per slot
+  private final long[] dupFingerprint;
+  private final long[] dupFirstSeen;
+  private final long[] dupLastSuppressed;
+  private final long[] dupSuppressed;
+  private final String[] dupSource;
+  private final String[] dupTrapOid;
+  private final List<?>[] dupKeyVars;
+
+  // Guarded by this: token buckets, one source per slot; null when rate limiting is off
+  private final String[] bucketSource;
+  private final double[] bucketTokens;
+  private final long[] bucketRefilledAt;
+  private final long[] bucketFirstSuppressed;
+  private final long[] bucketLastSuppressed;
+  private final long[] bucketSuppressed;
+
+  private final LongAdder passed = new LongAdder();
+  private final LongAdder duplicates = new LongAdder();
+  private final LongAdder rateLimited = new LongAdder();
+
+  /**
+   * @param keyOids      prefixes of the bindings whose values are part of the fingerprint (e.g. ifIndex)
+   * @param ratePerSecond sustained traps per second allowed per source; 0 disables rate limiting
+   */
+  public TrapStormFilter(Consumer<TrapMessage> downstream, Consumer<TrapSuppression> summaries,
+                         long windowMs, int tableSize, List<String> keyOids,
+                         double ratePerSecond, int burst, int sourceTableSize) {
+    this.downstream = downstream;
+    this.summaries = summaries;
+    this.windowMs = Math.max(1, windowMs);
+    List<Oid> keys = new ArrayList<>();
+    if (keyOids != null) {
+      for (String oid : keyOids) keys.add(OidTable.SHARED.parse(oid.trim()));
+    }
+    this.keyOids = List.copyOf(keys);
+
+    int slots = powerOfTwo(tableSize);
+    this.dupFingerprint = new long[slots];
+    this.dupFirstSeen = new long[slots];
+    this.dupLastSuppressed = new long[slots];
+    this.dupSuppressed = new long[slots];
+    this.dupSource = new String[slots];
+    this.dupTrapOid = new String[slots];
+    this.dupKeyVars = new List<?>[slots];
+
+    this.ratePerMs = Math.max(0, ratePerSecond) / 1000.0;
+    this.burst = Math.max(1, burst);
+    int sources = ratePerSecond > 0 ? powerOfTwo(sourceTableSize) : 0;
+    this.bucketSource = ratePerSecond > 0 ? new String[sources] : null;
+    this.bucketTokens = new double[sources];
+    this.bucketRefilledAt = new long[sources];
+    this.bucketFirstSuppressed = new long[sources];
+    this.bucketLastSuppressed = new long[sources];
+    this.bucketSuppressed = new long[sources];
+
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread t = new Thread(r, "qubi-snmp-trap-storm");
+      t.setDaemon(true);
+      return t;
+    });
+    this.sweeper = executor;
+    executor.scheduleWithFixedDelay(() -> sweep(System.currentTimeMillis(), false),
+        this.windowMs, this.windowMs, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void accept(TrapMessage msg) {
+    long now = msg.receivedAtMillis();
+    String source = TrapKeyExtractor.SOURCE_HOST.key(msg) instanceof String s ? s : "";
+    String trapOid = msg.trapOid();
+    List<Var> keyVars = keyVars(msg);
+    long fingerprint = fingerprint(source, trapOid, keyVars);
+    List<TrapSuppression> evicted = null;
+    boolean deliver;
+    synchronized (this) {
+      int slot = (int) mix(fingerprint) & (dupFingerprint.length - 1);
+      boolean occupied = dupSource[slot] != null;
+      if (occupied && dupFingerprint[slot] == fingerprint && now - dupFirstSeen[slot] < windowMs
+          && source.equals(dupSource[slot]) && Objects.equals(trapOid, dupTrapOid[slot])
+          && keyVars.equals(dupKeyVars[slot])) {
+        dupSuppressed[slot]++;
+        dupLastSuppressed[slot] = now;
+        duplicates.increment();
+        return;
+      }
+      if (occupied && dupSuppressed[slot] > 0) {
+        evicted = new ArrayList<>(2);
+        evicted.add(duplicateSummary(slot));
+      }
+      TrapSuppression[] bucketEvicted = new TrapSuppression[1];
+      deliver = allow(source, now, bucketEvicted);
+      if (bucketEvicted[0] != null) {
+        if (evicted == null) evicted = new ArrayList<>(1);
+        evicted.add(bucketEvicted[0]);
+      }
+      if (deliver) {
+        dupFingerprint[slot] = fingerprint;
+        dupFirstSeen[slot] = now;
+        dupLastSuppressed[slot] = 0;
+        dupSuppressed[slot] = 0;
+        dupSource[slot] = source;
+        dupTrapOid[slot] = trapOid;
+        dupKeyVars[slot] = keyVars;
+      } else if (evicted != null) {
+        dupSuppressed[slot] = 0;
+      }
+    }
+    if (evicted != null) {
+      publish(evicted);
+    }
+    if (deliver) {
+      passed.increment();
+      downstream.accept(msg);
+    } else {
+      rateLimited.increment();
+    }
+  }
+
+  // Called with the lock held; a summary for a source losing its slot is left in evicted[0]
+  private boolean allow(String source, long now, TrapSuppression[] evicted) {
+    if (bucketSource == null) return true;
+    int slot = (int) mix(source.hashCode()) & (bucketSource.length - 1);
+    if (!source.equals(bucketSource[slot])) {
+      if (bucketSource[slot] != null && bucketSuppressed[slot] > 0) {
+        // The slot goes to another source; report what the previous one lost
+        evicted[0] = rateSummary(slot);
+      }
+      bucketSource[slot] = source;
+      bucketTokens[slot] = burst;
+      bucketRefilledAt[slot] = now;
+      bucketSuppressed[slot] = 0;
+    } else {
+      long elapsed = Math.max(0, now - bucketRefilledAt[slot]);
+      bucketTokens[slot] = Math.min(burst, bucketTokens[slot] + elapsed * ratePerMs);
+      bucketRefilledAt[slot] = now;
+    }
+    if (bucketTokens[slot] >= 1) {
+      bucketTokens[slot] -= 1;
+      return true;
+    }
+    if (bucketSuppressed[slot]++ == 0) {
+      bucketFirstSuppressed[slot] = now;
+    }
+    bucketLastSuppressed[slot] = now;
+    return false;
+  }
+
+  /** The bindings under one of the key prefixes, in PDU order. */
+  private List<Var> keyVars(TrapMessage msg) {
+    if (keyOids.isEmpty()) return List.of();
+    List<Var> vars = new ArrayList<>(2);
+    if (msg instanceof LazyTrapMessage lazy) {
+      // Match the raw bindings so only key bindings are converted, even for dropped duplicates
+      for (VariableBinding vb : lazy.pdu().getVariableBindings()) {
+        if (isKey(vb.getOid().getValue())) {
+          vars.add(Snmp4jValues.toUninternedVar(vb));
+        }
+      }
+      return vars;
+    }
+    for (Var var : msg.variables()) {
+      if (isKey(var.name().arcs())) {
+        vars.add(var);
+      }
+    }
+    return vars;
+  }
+
+  private boolean isKey(int[] arcs) {
+    for (Oid key : keyOids) {
+      int n = key.size();
+      if (n <= arcs.length && Arrays.equals(arcs, 0, n, key.arcs(), 0, n)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static long fingerprint(String source, String trapOid, List<Var> keyVars) {
+    long h = source.hashCode();
+    h = h * 0x9E3779B97F4A7C15L + (trapOid != null ? trapOid.hashCode() : 0);
+    for (Var var : keyVars) {
+      h = h * 0x9E3779B97F4A7C15L + var.name().hashCode();
+      h = h * 0x9E3779B97F4A7C15L + var.value().hashCode();
+    }
+    return h;
+  }
+
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    return h ^ (h >>> 33);
+  }
+
+  private static int powerOfTwo(int size) {
+    int n = Math.max(16, Math.min(size, 1 << 24));
+    return Integer.highestOneBit(n - 1) << 1;
+  }
+
+  private TrapSuppression duplicateSummary(int slot) {
+    return new TrapSuppression(TrapSuppression.Reason.DUPLICATE, dupSource[slot], dupTrapOid[slot],
+        dupSuppressed[slot], dupFirstSeen[slot], dupLastSuppressed[slot]);
+  }
+
+  private TrapSuppression rateSummary(int slot) {
+    return new TrapSuppression(TrapSuppression.Reason.RATE_LIMITED, bucketSource[slot], null,
+        bucketSuppressed[slot], bucketFirstSuppressed[slot], bucketLastSuppressed[slot]);
+  }
+
+  /** Reports suppressions whose window has closed (all of them when {@code all}) and clears their counts. */
+  private void sweep(long now, boolean all) {
+    List<TrapSuppression> out = new ArrayList<>();
+    synchronized (this) {
+      for (int i = 0; i < dupSource.length; i++) {
+        if (dupSource[i] != null && dupSuppressed[i] > 0 && (all || now - dupFirstSeen[i] >= windowMs)) {
+          out.add(duplicateSummary(i));
+          dupSuppressed[i] = 0;
+        }
+      }
+      if (bucketSource != null) {
+        for (int i = 0; i < bucketSource.length; i++) {
+          if (bucketSource[i] != null && bucketSuppressed[i] > 0) {
+            out.add(rateSummary(i));
+            bucketSuppressed[i] = 0;
+          }
+        }
+      }
+    }
+    publish(out);
+  }
+
+  private void publish(List<TrapSuppression> out) {
+    for (TrapSuppression summary : out) {
+      try {
+        summaries.accept(summary);
+      } catch (RuntimeException e) {
+        log.log(Level.WARNING, "Error delivering trap suppression summary", e);
+      }
+    }
+  }
+
+  public long passed() { return passed.sum(); }
+
+  public long suppressedDuplicates() { return duplicates.sum(); }
+
+  public long suppressedRateLimited() { return rateLimited.sum(); }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("qubi.snmp.traps.storm.passed", this, TrapStormFilter::passed).register(registry);
+    FunctionCounter.builder("qubi.snmp.traps.storm.suppressed", this, TrapStormFilter::suppressedDuplicates)
+        .tag("reason", "duplicate").register(registry);
+    FunctionCounter.builder("qubi.snmp.traps.storm.suppressed", this, TrapStormFilter::suppressedRateLimited)
+        .tag("reason", "rate-limited").register(registry);
+  }
+
+  /** Reports every outstanding suppression count. */
+  @Override
+  public void close() {
+    sweeper.shutdownNow();
+    sweep(System.currentTimeMillis(), true);
+  }
+}
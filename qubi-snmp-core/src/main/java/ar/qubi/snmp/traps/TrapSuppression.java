@@ -0,0 +1,10 @@
+package ar.qubi.snmp.traps;
+
+/**
+ * Summary of traps a {@link TrapStormFilter} held back. {@code trapOid} is null for
+ * {@link Reason#RATE_LIMITED}, which counts every trap from the source.
+ */
+public record TrapSuppression(Reason reason, String source, String trapOid, long suppressed,
+                              long firstSeenAtMillis, long lastSuppressedAtMillis) {
+  public enum Reason { DUPLICATE, RATE_LIMITED }
+}
@@ -0,0 +1,41 @@
+package ar.qubi.snmp.api;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OidTableTest {
+
+  @Test
+  void instancesShareTheirInternedColumn() {
+    OidTable table = new OidTable(16);
+    Oid first = table.instance(new int[] {1, 3, 6, 1, 2, 1, 2, 2, 1, 10, 1});
+    Oid second = table.instance(new int[] {1, 3, 6, 1, 2, 1, 2, 2, 1, 10, 2});
+
+    assertSame(first.parent(), second.parent());
+    assertEquals(1, table.size());
+    assertEquals("1.3.6.1.2.1.2.2.1.10.2", second.toString());
+    assertEquals(Oid.parse("1.3.6.1.2.1.2.2.1.10.2"), second);
+  }
+
+  @Test
+  void rowsDoNotFillTheTable() {
+    OidTable table = new OidTable(4);
+    for (int row = 0; row < 10_000; row++) {
+      table.instance(new int[] {1, 3, 6, 1, 2, 1, 2, 2, 1, 10, row});
+    }
+    assertEquals(1, table.size());
+    Oid configured = table.parse("1.3.6.1.2.1.2.2.1.16");
+    assertSame(configured, table.parse("1.3.6.1.2.1.2.2.1.16"));
+  }
+
+  @Test
+  void lookupDoesNotIntern() {
+    OidTable table = new OidTable(16);
+    Oid configured = table.parse("1.3.6.1.4.1.9.9.41.2");
+
+    assertSame(configured, table.lookup("1.3.6.1.4.1.9.9.41.2"));
+    assertEquals(Oid.parse("1.3.6.1.4.1.99999.1"), table.lookup("1.3.6.1.4.1.99999.1"));
+    assertEquals(1, table.size());
+  }
+}
@@ -0,0 +1,32 @@
+package ar.qubi.snmp.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrapMessageTest {
+  private static TrapMessage trap(Instant receivedAt) {
+    return new TrapMessage(receivedAt, "10.0.0.1:162", "2c", "public", "1.3.6.1.6.3.1.1.5.3",
+        List.of(new Var("1.3.6.1.2.1.2.2.1.1.1", SnmpValue.ofInteger(1))), null);
+  }
+
+  @Test
+  void keepsTheReceiveTimeAsGiven() {
+    Instant precise = Instant.parse("2024-06-01T12:00:00.123456789Z");
+    assertEquals(precise, trap(precise).receivedAt());
+    assertEquals(precise.toEpochMilli(), trap(precise).receivedAtMillis());
+    assertNotEquals(trap(precise), trap(Instant.parse("2024-06-01T12:00:00.123Z")));
+  }
+
+  @Test
+  void nullReceiveTimeStaysNull() {
+    assertNull(trap(null).receivedAt());
+    assertEquals(0, trap(null).receivedAtMillis());
+    assertEquals(trap(null), trap(null));
+    assertEquals(trap(null).hashCode(), trap(null).hashCode());
+    assertNotEquals(trap(null), trap(Instant.EPOCH));
+  }
+}
@@ -0,0 +1,159 @@
+package ar.qubi.snmp.client;
+
+import ar.qubi.snmp.api.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoalescingSnmpClientTest {
+  private static final TargetSpec V2 = new TargetSpec("10.0.0.1", 161, "2c", "public", null);
+  private static final TargetSpec V1 = new TargetSpec("10.0.0.1", 161, "1", "public", null);
+
+  @Test
+  void slicesMergedResponsePerCaller() throws Exception {
+    FakeClient fake = new FakeClient();
+    try (CoalescingSnmpClient client = new CoalescingSnmpClient(fake, 10_000, 10)) {
+      CompletableFuture<SnmpResult> a = client.getAsync(V2, "1.3.6.1.2.1.1.1.0", "1.3.6.1.2.1.1.3.0");
+      CompletableFuture<SnmpResult> b = client.getAsync(V2, "1.3.6.1.2.1.1.5.0");
+      assertFalse(a.isDone());
+      client.close();
+
+      assertEquals(1, fake.gets.size());
+      assertEquals(List.of("1.3.6.1.2.1.1.1.0", "1.3.6.1.2.1.1.3.0", "1.3.6.1.2.1.1.5.0"), fake.gets.get(0));
+      assertEquals(List.of("1.3.6.1.2.1.1.1.0", "1.3.6.1.2.1.1.3.0"), oids(a.get(1, TimeUnit.SECONDS)));
+      assertEquals(List.of("1.3.6.1.2.1.1.5.0"), oids(b.get(1, TimeUnit.SECONDS)));
+      assertEquals(2, client.coalescedRequests());
+      assertEquals(1, client.sentPdus());
+    }
+  }
+
+  @Test
+  void flushesWhenWindowCloses() throws Exception {
+    FakeClient fake = new FakeClient();
+    try (CoalescingSnmpClient client = new CoalescingSnmpClient(fake, 20, 10)) {
+      CompletableFuture<SnmpResult> a = client.getAsync(V2, "1.3.6.1.2.1.1.1.0");
+      CompletableFuture<SnmpResult> b = client.getAsync(V2, "1.3.6.1.2.1.1.5.0");
+      assertEquals(List.of("1.3.6.1.2.1.1.1.0"), oids(a.get(5, TimeUnit.SECONDS)));
+      assertEquals(List.of("1.3.6.1.2.1.1.5.0"), oids(b.get(5, TimeUnit.SECONDS)));
+      assertEquals(1, fake.gets.size());
+    }
+  }
+
+  @Test
+  void flushesAsSoonAsBatchIsFull() throws Exception {
+    FakeClient fake = new FakeClient();
+    try (CoalescingSnmpClient client = new CoalescingSnmpClient(fake, 60_000, 3)) {
+      CompletableFuture<SnmpResult> a = client.getAsync(V2, "1.3.6.1.2.1.1.1.0", "1.3.6.1.2.1.1.3.0");
+      assertFalse(a.isDone());
+      CompletableFuture<SnmpResult> b = client.getAsync(V2, "1.3.6.1.2.1.1.5.0");
+      assertTrue(a.isDone());
+      assertTrue(b.isDone());
+      assertEquals(1, fake.gets.size());
+
+      // Does not fit in the remaining room, so it opens a new batch
+      CompletableFuture<SnmpResult> c = client.getAsync(V2, "1.3.6.1.2.1.1.6.0", "1.3.6.1.2.1.1.7.0");
+      CompletableFuture<SnmpResult> d = client.getAsync(V2, "1.3.6.1.2.1.1.4.0", "1.3.6.1.2.1.1.2.0");
+      assertTrue(c.isDone());
+      assertFalse(d.isDone());
+      assertEquals(2, fake.gets.size());
+    }
+  }
+
+  @Test
+  void v1AndOversizedRequestsBypassCoalescing() throws Exception {
+    FakeClient fake = new FakeClient();
+    try (CoalescingSnmpClient client = new CoalescingSnmpClient(fake, 60_000, 2)) {
+      assertTrue(client.getAsync(V1, "1.3.6.1.2.1.1.1.0").isDone());
+      assertTrue(client.getAsync(V2, "1.3.6.1.2.1.1.1.0", "1.3.6.1.2.1.1.3.0").isDone());
+      assertEquals(2, fake.gets.size());
+      assertEquals(0, client.coalescedRequests());
+    }
+  }
+
+  @Test
+  void malformedOidFailsOnlyItsCaller() throws Exception {
+    FakeClient fake = new FakeClient();
+    try (CoalescingSnmpClient client = new CoalescingSnmpClient(fake, 10_000, 10)) {
+      CompletableFuture<SnmpResult> good = client.getAsync(V2, "1.3.6.1.2.1.1.1.0");
+      CompletableFuture<SnmpResult> bad = client.getAsync(V2, "1.3.6.1.2.1.1.5.0", "1.3.x.1");
+      assertTrue(bad.isDone());
+      assertFalse(bad.join().ok());
+      assertTrue(bad.join().error().startsWith("Request error"), bad.join().error());
+      client.close();
+
+      assertEquals(List.of(List.of("1.3.6.1.2.1.1.1.0")), fake.gets);
+      assertTrue(good.get(1, TimeUnit.SECONDS).ok());
+    }
+  }
+
+  @Test
+  void delegateErrorIsReportedToEveryCaller() throws Exception {
+    FakeClient fake = new FakeClient();
+    fake.error = "Timeout";
+    try (CoalescingSnmpClient client = new CoalescingSnmpClient(fake, 10_000, 10)) {
+      CompletableFuture<SnmpResult> a = client.getAsync(V2, "1.3.6.1.2.1.1.1.0");
+      CompletableFuture<SnmpResult> b = client.getAsync(V2, "1.3.6.1.2.1.1.5.0");
+      client.close();
+      assertEquals("Timeout", a.get(1, TimeUnit.SECONDS).error());
+      assertEquals("Timeout", b.get(1, TimeUnit.SECONDS).error());
+    }
+  }
+
+  private static List<String> oids(SnmpResult result) {
+    assertTrue(result.ok(), result.error());
+    List<String> oids = new ArrayList<>();
+    for (Var v : result.vars()) {
+      oids.add(v.oid());
+    }
+    return oids;
+  }
+
+  /** Answers every GET at once with one binding per requested OID and records the request. */
+  private static final class FakeClient implements AsyncSnmpClient {
+    final List<List<String>> gets = new CopyOnWriteArrayList<>();
+    volatile String error;
+
+    @Override
+    public CompletableFuture<SnmpResult> getAsync(TargetSpec target, String... oids) {
+      gets.add(Arrays.asList(oids));
+      if (error != null) {
+        return CompletableFuture.completedFuture(new SnmpResult(List.of(), 0, error));
+      }
+      List<Var> vars = new ArrayList<>();
+      for (String oid : oids) {
+        vars.add(new Var(oid, oid));
+      }
+      return CompletableFuture.completedFuture(new SnmpResult(vars, 0, null));
+    }
+
+    @Override
+    public CompletableFuture<SnmpResult> getNextAsync(TargetSpec target, String... oids) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CompletableFuture<SnmpResult> bulkAsync(TargetSpec target, int nonRepeaters, int maxRepetitions,
+                                                   String... oids) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CompletableFuture<SnmpWalkResult> walkAsync(TargetSpec target, String rootOid) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CompletableFuture<SnmpStreamResult> walkAsync(TargetSpec target, List<String> rootOids, int maxRepetitions,
+                                                         Consumer<Var> sink) {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
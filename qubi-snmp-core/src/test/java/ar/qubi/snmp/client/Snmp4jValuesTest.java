@@ -0,0 +1,41 @@
+package ar.qubi.snmp.client;
+
+import ar.qubi.snmp.api.SmiSyntax;
+import ar.qubi.snmp.api.SnmpValue;
+import org.junit.jupiter.api.Test;
+import org.snmp4j.smi.BitString;
+import org.snmp4j.smi.Counter32;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OctetString;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Snmp4jValuesTest {
+
+  @Test
+  void knownSyntaxesKeepTheirType() {
+    assertEquals(SnmpValue.ofInteger(-5), Snmp4jValues.toValue(new Integer32(-5)));
+    assertEquals(SnmpValue.ofUnsigned(SmiSyntax.COUNTER32, 4294967295L), Snmp4jValues.toValue(new Counter32(4294967295L)));
+    assertEquals("abc", Snmp4jValues.toValue(new OctetString("abc")).toString());
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  void unlistedTagKeepsRawEncoding() {
+    BitString bits = new BitString();
+    bits.setValue(new byte[] {(byte) 0xA0});
+    SnmpValue value = Snmp4jValues.toValue(bits);
+    assertEquals(SmiSyntax.UNKNOWN, value.syntax());
+    assertEquals(0x03, value.bytes()[0] & 0xFF);
+    assertEquals("03:01:a0", value.toString());
+  }
+
+  @Test
+  void fromTagFallsBackToUnknown() {
+    assertEquals(SmiSyntax.COUNTER64, SmiSyntax.fromTag(0x46));
+    assertEquals(SmiSyntax.UNKNOWN, SmiSyntax.fromTag(0x45));
+    assertEquals(SmiSyntax.UNKNOWN, SmiSyntax.fromTag(0x47));
+    assertEquals(SmiSyntax.UNKNOWN, SmiSyntax.fromTag(0x1FF));
+    assertFalse(SmiSyntax.UNKNOWN.isException());
+  }
+}
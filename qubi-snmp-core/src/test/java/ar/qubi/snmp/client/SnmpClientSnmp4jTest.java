@@ -0,0 +1,85 @@
+package ar.qubi.snmp.client;
+
+import ar.qubi.snmp.api.SnmpResult;
+import ar.qubi.snmp.api.TargetSpec;
+import ar.qubi.snmp.api.V3Sec;
+import ar.qubi.snmp.autoconfigure.QubiSnmpProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.snmp4j.mp.MPv3;
+import org.snmp4j.security.SecurityModels;
+import org.snmp4j.security.SecurityProtocols;
+import org.snmp4j.security.USM;
+import org.snmp4j.security.UsmUserEntry;
+import org.snmp4j.smi.OctetString;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnmpClientSnmp4jTest {
+  private static final TargetSpec LOCAL = new TargetSpec("127.0.0.1", 161, "2c", "public", null);
+
+  private SnmpClientSnmp4j client;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    QubiSnmpProperties.Client props = new QubiSnmpProperties.Client();
+    props.setTimeoutMs(50);
+    props.setRetries(0);
+    client = new SnmpClientSnmp4j(props);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    client.close();
+  }
+
+  @Test
+  void invalidOidCompletesWithError() {
+    assertErrorResult(client.getAsync(LOCAL, "not.an.oid"));
+    assertErrorResult(client.getNextAsync(LOCAL, "1.3.x"));
+    assertErrorResult(client.bulkAsync(LOCAL, 0, 10, "bogus"));
+  }
+
+  @Test
+  void unsupportedVersionCompletesWithError() {
+    TargetSpec target = new TargetSpec("127.0.0.1", 161, "9", "public", null);
+    assertErrorResult(client.getAsync(target, "1.3.6.1.2.1.1.1.0"));
+  }
+
+  @Test
+  void replacedUsmGetsEveryKnownUser() {
+    TargetSpec alice = v3Target("alice");
+    TargetSpec bob = v3Target("bob");
+    client.getAsync(alice, "1.3.6.1.2.1.1.1.0");
+    client.getAsync(bob, "1.3.6.1.2.1.1.1.0");
+
+    // What the trap server does on start
+    USM replacement = new USM(SecurityProtocols.getInstance(), new OctetString(MPv3.createLocalEngineID()), 0);
+    SecurityModels.getInstance().addSecurityModel(replacement);
+    client.getAsync(alice, "1.3.6.1.2.1.1.1.0");
+
+    Set<String> users = replacement.getUserTable().getUserEntries().stream()
+        .map(UsmUserEntry::getUserName)
+        .map(OctetString::toString)
+        .collect(Collectors.toSet());
+    assertEquals(Set.of("alice", "bob"), users);
+  }
+
+  private static TargetSpec v3Target(String user) {
+    return new TargetSpec("127.0.0.1", 1, "3", null,
+        new V3Sec(user, "authPriv", null, "authpass-" + user, null, "privpass-" + user));
+  }
+
+  private static void assertErrorResult(CompletableFuture<SnmpResult> future) {
+    assertTrue(future.isDone());
+    assertFalse(future.isCompletedExceptionally());
+    SnmpResult result = future.join();
+    assertFalse(result.ok());
+    assertTrue(result.error().startsWith("Request error: "), result.error());
+  }
+}
@@ -0,0 +1,73 @@
+package ar.qubi.snmp.client;
+
+import ar.qubi.snmp.api.TargetSpec;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnmpRequestGovernorTest {
+  private static final TargetSpec TARGET = new TargetSpec("10.0.0.1", 161, "2c", "public", null);
+
+  @Test
+  void queuesOverPerTargetLimitAndStartsOnRelease() {
+    SnmpRequestGovernor governor = new SnmpRequestGovernor(0, 1, 0);
+    CompletableFuture<String> first = new CompletableFuture<>();
+    CompletableFuture<String> a = governor.submit(TARGET, () -> first);
+    CompletableFuture<String> b = governor.submit(TARGET, () -> CompletableFuture.completedFuture("b"));
+    assertEquals(1, governor.inFlight());
+    assertEquals(1, governor.queued());
+    assertFalse(b.isDone());
+
+    first.complete("a");
+    assertEquals("a", a.join());
+    assertEquals("b", b.join());
+    assertEquals(0, governor.inFlight());
+    assertEquals(0, governor.queued());
+  }
+
+  @Test
+  void rejectsWhenQueueIsFull() {
+    SnmpRequestGovernor governor = new SnmpRequestGovernor(1, 0, 1);
+    governor.submit(TARGET, CompletableFuture::new);
+    governor.submit(TARGET, CompletableFuture::new);
+    CompletableFuture<Object> rejected = governor.submit(TARGET, CompletableFuture::new);
+    assertTrue(rejected.isCompletedExceptionally());
+    assertThrows(RejectedExecutionException.class, () -> {
+      try {
+        rejected.join();
+      } catch (RuntimeException e) {
+        throw e.getCause();
+      }
+    });
+    assertEquals(1, governor.rejected());
+  }
+
+  @Test
+  void synchronousFailuresDrainWithoutRecursion() {
+    int queued = 50_000;
+    SnmpRequestGovernor governor = new SnmpRequestGovernor(1, 0, queued);
+    CompletableFuture<Void> blocker = new CompletableFuture<>();
+    governor.submit(TARGET, () -> blocker);
+    List<CompletableFuture<Void>> results = new ArrayList<>();
+    for (int i = 0; i < queued; i++) {
+      results.add(governor.submit(TARGET, () -> {
+        throw new UncheckedIOException(new IOException("socket closed"));
+      }));
+    }
+    assertEquals(queued, governor.queued());
+
+    blocker.complete(null);
+    for (CompletableFuture<Void> result : results) {
+      assertTrue(result.isCompletedExceptionally());
+    }
+    assertEquals(0, governor.inFlight());
+    assertEquals(0, governor.queued());
+  }
+}
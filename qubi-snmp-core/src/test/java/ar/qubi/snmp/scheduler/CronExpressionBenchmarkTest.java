@@ -0,0 +1,66 @@
+package ar.qubi.snmp.scheduler;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Measures the cost of {@link CronExpression#nextAfter(long)}, which every cron job calls after each
+ * run. Reports only; correctness lives in {@link CronExpressionTest}. Excluded from the default
+ * build, run it with {@code mvn test -Dgroups=benchmark -Dsurefire.excludedGroups=none}.
+ */
+@Tag("benchmark")
+class CronExpressionBenchmarkTest {
+  private static final Logger log = Logger.getLogger(CronExpressionBenchmarkTest.class.getName());
+  private static final int WARMUP = 200_000;
+  private static final int ITERATIONS = 1_000_000;
+  // 2024-01-15T10:07:30Z
+  private static final long START = 1_705_313_250_000L;
+
+  private static void measure(String expression, ZoneId zone) {
+    CronExpression cron = CronExpression.parse(expression, zone);
+    long sink = 0;
+    long t = START;
+    for (int i = 0; i < WARMUP; i++) {
+      t = cron.nextAfter(t);
+      sink += t;
+    }
+    t = START;
+    long begin = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      t = cron.nextAfter(t);
+      sink += t;
+    }
+    long elapsed = System.nanoTime() - begin;
+    assertNotEquals(0, sink);
+    log.info(String.format("nextAfter %-22s %-16s %8.1f ns/call", expression, zone, (double) elapsed / ITERATIONS));
+  }
+
+  @Test
+  void nextAfterInAFixedOffsetZone() {
+    measure("*/30 * * * * *", ZoneOffset.UTC);
+    measure("0 */5 8-18 * * MON-FRI", ZoneOffset.UTC);
+    measure("0 0 12 13 * FRI", ZoneOffset.UTC);
+  }
+
+  @Test
+  void nextAfterInADstZone() {
+    measure("0 */5 * * * *", ZoneId.of("Europe/Madrid"));
+  }
+
+  @Test
+  void compiledExpressionsComeFromTheCache() {
+    String expression = "0 */15 * * * *";
+    CronExpression first = CronParser.compile(expression);
+    long begin = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      assertSame(first, CronParser.compile(expression));
+    }
+    log.info(String.format("CronParser.compile (cached) %8.1f ns/call", (double) (System.nanoTime() - begin) / ITERATIONS));
+  }
+}
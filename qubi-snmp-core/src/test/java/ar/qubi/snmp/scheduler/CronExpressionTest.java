@@ -0,0 +1,112 @@
+package ar.qubi.snmp.scheduler;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CronExpressionTest {
+  private static final ZoneId UTC = ZoneOffset.UTC;
+  private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+  private static ZonedDateTime next(String expression, ZoneId zone, String after) {
+    long from = LocalDateTime.parse(after).atZone(zone).toInstant().toEpochMilli();
+    long next = CronExpression.parse(expression, zone).nextAfter(from);
+    assertTrue(next > from, "no fire time after " + after);
+    return ZonedDateTime.ofInstant(java.time.Instant.ofEpochMilli(next), zone);
+  }
+
+  private static ZonedDateTime utc(String local) {
+    return LocalDateTime.parse(local).atZone(UTC);
+  }
+
+  @Test
+  void fiveFieldsFireAtSecondZero() {
+    assertEquals(utc("2024-01-15T10:15:00"), next("*/15 * * * *", UTC, "2024-01-15T10:07:30"));
+    assertEquals(utc("2024-01-15T10:30:00"), next("*/15 * * * *", UTC, "2024-01-15T10:15:00"));
+  }
+
+  @Test
+  void sixFieldsHaveSeconds() {
+    assertEquals(utc("2024-01-15T10:10:30"), next("30 */5 * * * *", UTC, "2024-01-15T10:07:00"));
+    assertEquals(utc("2024-01-15T10:07:01"), next("* * * * * *", UTC, "2024-01-15T10:07:00"));
+  }
+
+  @Test
+  void monthAndDayNames() {
+    // Friday 2024-03-29 09:00; April is not listed, so the next weekday fire is in January
+    assertEquals(utc("2025-01-01T09:00:00"), next("0 9 * JAN-MAR MON-FRI", UTC, "2024-03-29T09:00:00"));
+    assertEquals(utc("2024-01-07T00:00:00"), next("0 0 * * sun", UTC, "2024-01-01T00:00:00"));
+    // Day of week 7 is Sunday as well
+    assertEquals(utc("2024-01-07T00:00:00"), next("0 0 * * 7", UTC, "2024-01-01T00:00:00"));
+  }
+
+  @Test
+  void stepsOverRangesAndStarts() {
+    assertEquals(utc("2024-01-16T08:00:00"), next("0 0/20 8-10 * * *", UTC, "2024-01-15T10:40:00"));
+    assertEquals(utc("2024-01-15T10:40:00"), next("0 0/20 8-10 * * *", UTC, "2024-01-15T10:20:00"));
+    assertEquals(utc("2024-01-15T12:00:00"), next("0 9-17/3 * * *", UTC, "2024-01-15T09:00:00"));
+  }
+
+  @Test
+  void restrictedDayFieldsMatchEitherOne() {
+    // The 13th or any Friday (Vixie cron)
+    assertEquals(utc("2024-09-06T12:00:00"), next("0 12 13 * FRI", UTC, "2024-09-01T00:00:00"));
+    assertEquals(utc("2024-09-13T12:00:00"), next("0 12 13 * FRI", UTC, "2024-09-06T12:00:00"));
+    assertEquals(utc("2024-10-04T12:00:00"), next("0 12 13 * FRI", UTC, "2024-09-27T12:00:00"));
+    assertEquals(utc("2024-10-11T12:00:00"), next("0 12 13 * FRI", UTC, "2024-10-04T12:00:00"));
+    assertEquals(utc("2024-10-13T12:00:00"), next("0 12 13 * FRI", UTC, "2024-10-11T12:00:00"));
+    // With one day field unrestricted only the other one counts
+    assertEquals(utc("2024-09-13T12:00:00"), next("0 12 13 * *", UTC, "2024-09-01T00:00:00"));
+    assertEquals(utc("2024-09-06T12:00:00"), next("0 12 ? * FRI", UTC, "2024-09-01T00:00:00"));
+  }
+
+  @Test
+  void february29WaitsForALeapYear() {
+    assertEquals(utc("2028-02-29T00:00:00"), next("0 0 29 2 *", UTC, "2024-03-01T00:00:00"));
+    // 2100 is not a leap year
+    assertEquals(utc("2104-02-29T00:00:00"), next("0 0 29 2 *", UTC, "2096-03-01T00:00:00"));
+    assertEquals(-1, CronExpression.parse("0 0 30 2 *", UTC).nextAfter(0));
+  }
+
+  @Test
+  void timeSkippedByDstGapMovesForward() {
+    // 2024-03-10 02:00 EST -> 03:00 EDT: 02:30 does not exist that day
+    ZonedDateTime fire = next("0 30 2 * * *", NEW_YORK, "2024-03-10T00:00:00");
+    assertEquals(OffsetDateTime.parse("2024-03-10T03:30:00-04:00"), fire.toOffsetDateTime());
+    assertEquals(OffsetDateTime.parse("2024-03-11T02:30:00-04:00"),
+        next("0 30 2 * * *", NEW_YORK, "2024-03-10T03:30:00").toOffsetDateTime());
+  }
+
+  @Test
+  void repeatedDstHourFiresOnce() {
+    // 2024-11-03 02:00 EDT -> 01:00 EST: 01:30 happens twice
+    ZonedDateTime first = next("0 30 1 * * *", NEW_YORK, "2024-11-03T00:00:00");
+    assertEquals(OffsetDateTime.parse("2024-11-03T01:30:00-04:00"), first.toOffsetDateTime());
+    long after = CronExpression.parse("0 30 1 * * *", NEW_YORK).nextAfter(first.toInstant().toEpochMilli());
+    assertEquals(OffsetDateTime.parse("2024-11-04T01:30:00-05:00").toInstant().toEpochMilli(), after);
+    // Every wall-clock time fires once, so hourly jobs do not repeat 01:00 either
+    assertEquals(OffsetDateTime.parse("2024-11-03T02:00:00-05:00"),
+        next("0 0 * * * *", NEW_YORK, "2024-11-03T01:30:00").toOffsetDateTime());
+  }
+
+  @Test
+  void macrosAndErrors() {
+    assertEquals(utc("2025-01-01T00:00:00"), next("@yearly", UTC, "2024-06-01T00:00:00"));
+    assertEquals(utc("2024-06-01T01:00:00"), next("@hourly", UTC, "2024-06-01T00:00:00"));
+    assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("* * * *", UTC));
+    assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("0 60 * * * *", UTC));
+    assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("*/0 * * * *", UTC));
+    assertThrows(IllegalArgumentException.class, () -> CronExpression.parse("0 0 * FOO *", UTC));
+  }
+
+  @Test
+  void compiledExpressionsAreCached() {
+    assertSame(CronParser.compile("0 */15 * * * *"), CronParser.compile("0 */15 * * * *"));
+  }
+}
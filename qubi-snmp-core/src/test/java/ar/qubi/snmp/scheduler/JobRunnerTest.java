@@ -0,0 +1,105 @@
+package ar.qubi.snmp.scheduler;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JobRunnerTest {
+
+  private static final PollingJob POLL = new PollingJob() {
+    @Override public String name() { return "ifPoll"; }
+    @Override public void execute(JobContext ctx) { }
+  };
+
+  @Test
+  void phaseDependsOnParams() {
+    Set<Long> phases = new HashSet<>();
+    for (int device = 0; device < 100; device++) {
+      JobConfig cfg = new JobConfig(null, Duration.ofMinutes(1), null, Map.of("device", "10.0.0." + device));
+      long phase = JobRunner.phaseMs(POLL, cfg, 60_000);
+      assertTrue(phase >= 0 && phase < 60_000);
+      phases.add(phase);
+    }
+    assertTrue(phases.size() > 90, "phases: " + phases.size());
+  }
+
+  @Test
+  void phaseIsStableForTheSameJob() {
+    JobConfig a = new JobConfig(null, Duration.ofMinutes(1), null, Map.of("device", "10.0.0.1"));
+    JobConfig b = new JobConfig(null, Duration.ofMinutes(1), null, Map.of("device", "10.0.0.1"));
+    assertEquals(JobRunner.phaseMs(POLL, a, 60_000), JobRunner.phaseMs(POLL, b, 60_000));
+  }
+
+  // Fires the job once, then `missed` more times while the first run is still going
+  private static JobRunner overrun(OverrunPolicy policy, int maxCatchUp, int missed, AtomicInteger runs)
+      throws Exception {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      CountDownLatch started = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      PollingJob job = new PollingJob() {
+        @Override public String name() { return "slow"; }
+        @Override public void execute(JobContext ctx) throws InterruptedException {
+          runs.incrementAndGet();
+          started.countDown();
+          release.await();
+        }
+      };
+      JobRunner runner = new JobRunner(null, Logger.getLogger("test"), executor, 0, true);
+      JobRunner.Handle handle = runner.handle(job,
+          new JobConfig(null, Duration.ofSeconds(1), null, Map.of(), policy, maxCatchUp));
+      runner.fire(handle);
+      assertTrue(started.await(2, TimeUnit.SECONDS));
+      for (int i = 0; i < missed; i++) {
+        runner.fire(handle);
+      }
+      release.countDown();
+      long deadline = System.currentTimeMillis() + 2000;
+      while (handle.isRunning()) {
+        assertTrue(System.currentTimeMillis() < deadline, "job still running");
+        Thread.sleep(5);
+      }
+      return runner;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void skipDropsRunsMissedWhileRunning() throws Exception {
+    AtomicInteger runs = new AtomicInteger();
+    JobRunner runner = overrun(OverrunPolicy.SKIP, 0, 3, runs);
+    assertEquals(1, runs.get());
+    assertEquals(3, runner.skippedRuns());
+    assertEquals(0, runner.lateRuns());
+  }
+
+  @Test
+  void coalesceRunsOnceMoreAfterAnOverrun() throws Exception {
+    AtomicInteger runs = new AtomicInteger();
+    JobRunner runner = overrun(OverrunPolicy.COALESCE, 0, 3, runs);
+    assertEquals(2, runs.get());
+    assertEquals(2, runner.skippedRuns());
+    assertEquals(1, runner.lateRuns());
+  }
+
+  @Test
+  void catchUpRunsMissedRunsUpToTheLimit() throws Exception {
+    AtomicInteger runs = new AtomicInteger();
+    JobRunner runner = overrun(OverrunPolicy.CATCH_UP, 2, 3, runs);
+    assertEquals(3, runs.get());
+    assertEquals(1, runner.skippedRuns());
+    assertEquals(2, runner.lateRuns());
+  }
+}
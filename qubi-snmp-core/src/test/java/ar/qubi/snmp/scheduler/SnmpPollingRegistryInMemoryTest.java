@@ -0,0 +1,57 @@
+package ar.qubi.snmp.scheduler;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnmpPollingRegistryInMemoryTest {
+
+  private static PollingJob job(String name, Runnable body) {
+    return new PollingJob() {
+      @Override public String name() { return name; }
+      @Override public void execute(JobContext ctx) { body.run(); }
+    };
+  }
+
+  private static JobConfig every(long ms) {
+    return new JobConfig(null, Duration.ofMillis(ms), null, Map.of());
+  }
+
+  @Test
+  void platformRunsOverTheCapDoNotBlockTheTimer() throws Exception {
+    ScheduledExecutorService exec = Executors.newScheduledThreadPool(2);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch blocking = new CountDownLatch(1);
+    SnmpPollingRegistryInMemory registry =
+        new SnmpPollingRegistryInMemory(exec, null, SnmpPollingRegistryInMemory.Mode.PLATFORM, 1);
+    registry.setPhaseSpread(false);
+    try {
+      registry.register(job("slow", () -> {
+        blocking.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }), every(10));
+      assertTrue(blocking.await(2, TimeUnit.SECONDS));
+      registry.register(job("fast", () -> { }), every(10));
+
+      CountDownLatch timer = new CountDownLatch(1);
+      exec.schedule(timer::countDown, 50, TimeUnit.MILLISECONDS);
+      assertTrue(timer.await(2, TimeUnit.SECONDS), "timer thread starved");
+      assertTrue(registry.rejectedRuns() > 0);
+    } finally {
+      release.countDown();
+      registry.close();
+      exec.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package ar.qubi.snmp.scheduler;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnmpPollingRegistryTimingWheelTest {
+  private static final long TICK_MS = 100;
+
+  private final AtomicLong clock = new AtomicLong();
+  private final AtomicInteger runs = new AtomicInteger();
+  // 8 slots of 100 ms: one revolution is 800 ms
+  private final SnmpPollingRegistryTimingWheel wheel =
+      new SnmpPollingRegistryTimingWheel(null, TICK_MS, 8, new DirectExecutor(), clock::get);
+
+  private final PollingJob job = new PollingJob() {
+    @Override public String name() { return "poll"; }
+    @Override public void execute(JobContext ctx) { runs.incrementAndGet(); }
+  };
+
+  private static JobConfig every(long ms) {
+    return new JobConfig(null, Duration.ofMillis(ms), null, Map.of());
+  }
+
+  // Ticks (from the current one up to lastTick) on which the job ran
+  private List<Integer> advanceTo(int firstTick, int lastTick) {
+    List<Integer> fired = new ArrayList<>();
+    for (int tick = firstTick; tick <= lastTick; tick++) {
+      clock.set(tick * TICK_MS);
+      int before = runs.get();
+      wheel.advance();
+      if (runs.get() != before) fired.add(tick);
+    }
+    return fired;
+  }
+
+  @Test
+  void firesOnTheFirstTickAtOrAfterEachDeadline() {
+    wheel.setPhaseSpread(false);
+    wheel.register(job, every(250));
+    // Deadlines 0, 250, 500, 750, 1000 ms rounded up to whole ticks
+    assertEquals(List.of(0, 3, 5, 8, 10), advanceTo(0, 10));
+  }
+
+  @Test
+  void waitsOutExtraRevolutions() {
+    wheel.setPhaseSpread(false);
+    wheel.register(job, every(2500));
+    // Tick 25 shares its slot with ticks 1, 9 and 17; the remaining rounds keep it from firing there
+    assertEquals(List.of(0, 25), advanceTo(0, 30));
+  }
+
+  @Test
+  void phaseDelaysTheFirstRun() {
+    String id = wheel.register(job, every(800));
+    long phase = wheel.phaseMs(id);
+    assertTrue(phase >= 0 && phase < 800);
+    int firstTick = (int) ((phase + TICK_MS - 1) / TICK_MS);
+    assertEquals(List.of(firstTick, firstTick + 8), advanceTo(0, firstTick + 8));
+  }
+
+  @Test
+  void cancelledBeforeItsTickNeverFires() {
+    wheel.setPhaseSpread(false);
+    String id = wheel.register(job, every(300));
+    assertTrue(wheel.cancel(id));
+    assertEquals(List.of(), advanceTo(0, 20));
+    assertFalse(wheel.cancel(id));
+  }
+
+  @Test
+  void cancelledWhileWaitingInItsSlotNeverFiresAgain() {
+    wheel.setPhaseSpread(false);
+    String id = wheel.register(job, every(500));
+    assertEquals(List.of(0), advanceTo(0, 2));
+    assertTrue(wheel.cancel(id));
+    assertEquals(List.of(), advanceTo(3, 20));
+    assertEquals(0, wheel.size());
+  }
+
+  @Test
+  void cronJobsAreRescheduledAfterEachRun() throws Exception {
+    CountDownLatch twice = new CountDownLatch(2);
+    PollingJob cronJob = new PollingJob() {
+      @Override public String name() { return "cron"; }
+      @Override public void execute(JobContext ctx) { twice.countDown(); }
+    };
+    try (SnmpPollingRegistryTimingWheel real =
+             new SnmpPollingRegistryTimingWheel(null, 20, 64, SnmpPollingRegistryInMemory.Mode.PLATFORM, 0, 1)) {
+      real.register(cronJob, new JobConfig("* * * * * *", null, null, Map.of()));
+      assertTrue(twice.await(5, TimeUnit.SECONDS));
+      assertEquals(1, real.size());
+    }
+  }
+
+  /** Runs executions inline, so a job has run when advance() returns. */
+  private static final class DirectExecutor extends AbstractExecutorService {
+    private volatile boolean shutdown;
+
+    @Override public void execute(Runnable command) { command.run(); }
+    @Override public void shutdown() { shutdown = true; }
+    @Override public List<Runnable> shutdownNow() { shutdown = true; return List.of(); }
+    @Override public boolean isShutdown() { return shutdown; }
+    @Override public boolean isTerminated() { return shutdown; }
+    @Override public boolean awaitTermination(long timeout, TimeUnit unit) { return true; }
+  }
+}
@@ -0,0 +1,58 @@
+package ar.qubi.snmp.traps;
+
+import ar.qubi.snmp.api.TrapMessage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrapBatchersTest {
+
+  private static TrapMessage trap(String source) {
+    return new TrapMessage(Instant.now(), source, "2c", "public", "1.3.6.1.6.3.1.1.5.3", List.of(), null);
+  }
+
+  @Test
+  void lingerFlushDeliversABatch() throws Exception {
+    try (TrapBatchers batchers = new TrapBatchers()) {
+      CountDownLatch delivered = new CountDownLatch(1);
+      TrapBatcher batcher = batchers.create(batch -> {
+        if (batch.size() == 2) delivered.countDown();
+      }, 100, 20);
+      batcher.accept(trap("10.0.0.1"));
+      batcher.accept(trap("10.0.0.2"));
+      assertTrue(delivered.await(2, TimeUnit.SECONDS));
+    }
+  }
+
+  @Test
+  void slowSinkDoesNotDelayOtherBatchers() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    TrapBatchers batchers = new TrapBatchers();
+    try {
+      CountDownLatch slowStarted = new CountDownLatch(1);
+      TrapBatcher slow = batchers.create(batch -> {
+        slowStarted.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }, 100, 10);
+      CountDownLatch fastDelivered = new CountDownLatch(1);
+      TrapBatcher fast = batchers.create(batch -> fastDelivered.countDown(), 100, 10);
+
+      slow.accept(trap("10.0.0.1"));
+      assertTrue(slowStarted.await(2, TimeUnit.SECONDS));
+      fast.accept(trap("10.0.0.2"));
+      assertTrue(fastDelivered.await(2, TimeUnit.SECONDS));
+    } finally {
+      release.countDown();
+      batchers.close();
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package ar.qubi.snmp.traps;
+
+import ar.qubi.snmp.api.TrapMessage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.snmp4j.PDU;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrapSpoolTest {
+  private static final int SEGMENT_SIZE = 64 * 1024;
+
+  @TempDir
+  Path dir;
+
+  private final List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+
+  private static LazyTrapMessage trap(int seq) {
+    PDU pdu = new PDU();
+    pdu.setType(PDU.TRAP);
+    pdu.add(new VariableBinding(SnmpConstants.snmpTrapOID, new OID("1.3.6.1.6.3.1.1.5.3")));
+    pdu.add(new VariableBinding(new OID("1.3.6.1.2.1.2.2.1.1.1"), new Integer32(seq)));
+    return new LazyTrapMessage(System.currentTimeMillis(), "2c", new UdpAddress("10.0.0.1/162"),
+        new OctetString("public"), pdu, null);
+  }
+
+  private static int seq(TrapMessage msg) {
+    return msg.variables().get(1).value().toInt();
+  }
+
+  private TrapDispatcher recordingDispatcher() {
+    TrapDispatcher dispatcher = new TrapDispatcher();
+    dispatcher.add(msg -> received.add(seq(msg)));
+    return dispatcher;
+  }
+
+  private TrapSpool spool(int maxSegments, Consumer<TrapMessage> downstream) throws Exception {
+    return new TrapSpool(dir, SEGMENT_SIZE, maxSegments, 0, downstream, null);
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!condition.getAsBoolean()) {
+      assertTrue(System.currentTimeMillis() < deadline, "timed out");
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  void replaysTrapsNotDispatchedBeforeReopen() throws Exception {
+    try (TrapSpool spool = spool(4, msg -> received.add(seq(msg)))) {
+      for (int i = 0; i < 3; i++) spool.accept(trap(i));
+      spool.start();
+      await(() -> received.size() == 3);
+    }
+    // The first run's downstream never reached a dispatcher, so nothing was committed
+    received.clear();
+    try (TrapSpool spool = spool(4, recordingDispatcher())) {
+      spool.start();
+      await(() -> received.size() == 3);
+      assertEquals(0, spool.lagBytes());
+    }
+    assertEquals(List.of(0, 1, 2), received);
+
+    received.clear();
+    try (TrapSpool spool = spool(4, recordingDispatcher())) {
+      spool.start();
+      Thread.sleep(200);
+    }
+    assertEquals(List.of(), received);
+  }
+
+  @Test
+  void reopenedDrainedSpoolHasNoLag() throws Exception {
+    try (TrapSpool spool = spool(4, recordingDispatcher())) {
+      for (int i = 0; i < 3; i++) spool.accept(trap(i));
+      spool.start();
+      await(() -> spool.lagBytes() == 0);
+    }
+    try (TrapSpool spool = spool(4, recordingDispatcher())) {
+      assertEquals(0, spool.lagBytes());
+    }
+  }
+
+  @Test
+  void tornRecordIsTreatedAsTheEndOfTheLog() throws Exception {
+    try (TrapSpool spool = spool(4, recordingDispatcher())) {
+      spool.accept(trap(0));
+      spool.accept(trap(1));
+    }
+    // Crash while appending the second record: its length was never written
+    try (RandomAccessFile segment = new RandomAccessFile(dir.resolve(String.format("%020d.seg", 0)).toFile(), "rw")) {
+      int first = segment.readInt();
+      segment.seek(Integer.BYTES + first);
+      segment.writeInt(0);
+    }
+    try (TrapSpool spool = spool(4, recordingDispatcher())) {
+      spool.accept(trap(2));
+      spool.start();
+      await(() -> received.size() == 2);
+      assertEquals(2, spool.delivered());
+    }
+    assertEquals(List.of(0, 2), received);
+  }
+
+  @Test
+  void rollsOverAndDropsTheOldestSegmentBeyondRetention() throws Exception {
+    int count = 2000;
+    try (TrapSpool spool = spool(2, recordingDispatcher())) {
+      for (int i = 0; i < count; i++) spool.accept(trap(i));
+      assertEquals(2, spool.segmentCount());
+      assertTrue(spool.lostSegments() > 0);
+
+      spool.start();
+      await(() -> spool.lagBytes() == 0);
+      // Consumed segments are deleted; only the one being written remains
+      assertEquals(1, spool.segmentCount());
+    }
+    assertTrue(received.size() < count);
+    assertEquals(count - 1, (int) received.get(received.size() - 1));
+    for (int i = 1; i < received.size(); i++) {
+      assertEquals(received.get(i - 1) + 1, (int) received.get(i));
+    }
+  }
+
+  @Test
+  void skipsARecordThatKeepsFailing() throws Exception {
+    try (TrapSpool spool = spool(4, msg -> {
+      if (seq(msg) == 0) throw new IllegalStateException("poison");
+      received.add(seq(msg));
+      ((LazyTrapMessage) msg).dispatched();
+    })) {
+      spool.accept(trap(0));
+      spool.accept(trap(1));
+      spool.start();
+      await(() -> received.size() == 1);
+      assertEquals(1, spool.skipped());
+      assertEquals(0, spool.lagBytes());
+    }
+    assertEquals(List.of(1), received);
+  }
+
+  @Test
+  void refusesADroppingQueue() {
+    TrapQueue queue = new TrapQueue(new TrapDispatcher(), 10, 1, TrapQueue.Overflow.DROP);
+    try {
+      assertThrows(IllegalArgumentException.class, () -> spool(4, queue));
+    } finally {
+      queue.close();
+    }
+  }
+}
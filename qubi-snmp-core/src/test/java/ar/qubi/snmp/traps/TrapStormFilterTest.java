@@ -0,0 +1,100 @@
+package ar.qubi.snmp.traps;
+
+import ar.qubi.snmp.api.SnmpValue;
+import ar.qubi.snmp.api.TrapMessage;
+import ar.qubi.snmp.api.Var;
+import org.junit.jupiter.api.Test;
+import org.snmp4j.PDU;
+import org.snmp4j.mp.SnmpConstants;
+import org.snmp4j.smi.Integer32;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.OctetString;
+import org.snmp4j.smi.UdpAddress;
+import org.snmp4j.smi.VariableBinding;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrapStormFilterTest {
+  private static final String LINK_DOWN = "1.3.6.1.6.3.1.1.5.3";
+  private static final String IF_INDEX = "1.3.6.1.2.1.2.2.1.1";
+
+  private final List<TrapMessage> delivered = new ArrayList<>();
+  private final List<TrapSuppression> summaries = new ArrayList<>();
+
+  private TrapStormFilter filter() {
+    return new TrapStormFilter(delivered::add, summaries::add, 60_000, 16, List.of(IF_INDEX), 0, 1, 16);
+  }
+
+  private static TrapMessage trap(String address, int ifIndex) {
+    List<Var> vars = List.of(new Var(IF_INDEX + "." + ifIndex, SnmpValue.ofInteger(ifIndex)));
+    return new TrapMessage(Instant.ofEpochMilli(1_000), address, "2c", "public", LINK_DOWN, vars, null);
+  }
+
+  @Test
+  void suppressesRepeatsWithinTheWindow() {
+    try (TrapStormFilter filter = filter()) {
+      filter.accept(trap("10.0.0.1:162", 1));
+      filter.accept(trap("10.0.0.1:162", 1));
+      filter.accept(trap("10.0.0.1:162", 2));
+
+      assertEquals(2, delivered.size());
+      assertEquals(1, filter.suppressedDuplicates());
+    }
+    assertEquals(1, summaries.size());
+    assertEquals("10.0.0.1", summaries.get(0).source());
+  }
+
+  @Test
+  void fingerprintCollisionIsNotADuplicate() {
+    // "Aa" and "BB" have the same String.hashCode, so both traps get the same fingerprint
+    assertEquals("Aa".hashCode(), "BB".hashCode());
+    try (TrapStormFilter filter = filter()) {
+      filter.accept(trap("Aa:162", 1));
+      filter.accept(trap("BB:162", 1));
+
+      assertEquals(2, delivered.size());
+      assertEquals(0, filter.suppressedDuplicates());
+    }
+  }
+
+  @Test
+  void lazyTrapsOnlyConvertKeyBindings() {
+    AtomicInteger conversions = new AtomicInteger();
+    try (TrapStormFilter filter = filter()) {
+      filter.accept(lazyTrap(1, conversions));
+      filter.accept(lazyTrap(1, conversions));
+      filter.accept(lazyTrap(2, conversions));
+
+      assertEquals(2, delivered.size());
+      assertEquals(1, filter.suppressedDuplicates());
+      assertEquals(0, conversions.get());
+      assertEquals(2, delivered.get(1).variables().get(1).value().toInt());
+    }
+  }
+
+  private static TrapMessage lazyTrap(int ifIndex, AtomicInteger conversions) {
+    PDU pdu = new PDU();
+    pdu.setType(PDU.TRAP);
+    pdu.add(new VariableBinding(SnmpConstants.snmpTrapOID, new OID(LINK_DOWN)));
+    pdu.add(new VariableBinding(new OID(IF_INDEX + "." + ifIndex), new Integer32(ifIndex)));
+    pdu.add(new VariableBinding(new OID("1.3.6.1.2.1.2.2.1.2." + ifIndex), new OctetString("eth0") {
+      // VariableBinding stores a clone; keep this instance so reads are counted
+      @Override
+      public Object clone() {
+        return this;
+      }
+
+      @Override
+      public byte[] getValue() {
+        conversions.incrementAndGet();
+        return super.getValue();
+      }
+    }));
+    return new LazyTrapMessage(1_000, "2c", new UdpAddress("10.0.0.1/162"), new OctetString("public"), pdu, null);
+  }
+}
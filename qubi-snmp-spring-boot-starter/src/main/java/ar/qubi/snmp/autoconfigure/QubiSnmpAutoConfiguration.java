@@ -1,18 +1,30 @@
 package ar.qubi.snmp.autoconfigure;
 
 import ar.qubi.snmp.api.TrapMessage;
+import ar.qubi.snmp.client.AsyncSnmpClient;
+import ar.qubi.snmp.client.CoalescingSnmpClient;
 import ar.qubi.snmp.client.SnmpClient;
 import ar.qubi.snmp.client.SnmpClientSnmp4j;
 
 import ar.qubi.snmp.mib.MibLookup;
 import ar.qubi.snmp.mib.SystemMibLookup;
 import ar.qubi.snmp.scheduler.JobConfig;
+import ar.qubi.snmp.scheduler.OverrunPolicy;
 import ar.qubi.snmp.scheduler.PollingJob;
 import ar.qubi.snmp.scheduler.SnmpPollingRegistry;
 import ar.qubi.snmp.scheduler.SnmpPollingRegistryInMemory;
+import ar.qubi.snmp.scheduler.SnmpPollingRegistryTimingWheel;
 import ar.qubi.snmp.traps.SnmpTrapListener;
 import ar.qubi.snmp.traps.SnmpTrapServer;
+import ar.qubi.snmp.traps.TrapBatchers;
 import ar.qubi.snmp.traps.TrapDispatcher;
+import ar.qubi.snmp.traps.TrapFilter;
+import ar.qubi.snmp.traps.TrapKeyExtractor;
+import ar.qubi.snmp.traps.TrapListenerInvokers;
+import ar.qubi.snmp.traps.TrapQueue;
+import ar.qubi.snmp.traps.TrapSpool;
+import ar.qubi.snmp.traps.TrapStormFilter;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
@@ -20,14 +32,23 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.util.ClassUtils;
 
 import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -50,37 +71,129 @@ public class QubiSnmpAutoConfiguration {
   }
 
   @Bean
-  @ConditionalOnMissingBean
-  public SnmpClient snmpClient() throws IOException {
-    return new SnmpClientSnmp4j();
+  @ConditionalOnMissingBean(SnmpClient.class)
+  public AsyncSnmpClient snmpClient(QubiSnmpProperties props) throws IOException {
+    var client = new SnmpClientSnmp4j(props.getClient());
+    var coalesce = props.getClient().getCoalesce();
+    if (coalesce.isEnabled()) {
+      return new CoalescingSnmpClient(client, coalesce.getWindowMs(), coalesce.getMaxVarbinds());
+    }
+    return client;
   }
 
   @Bean(destroyMethod = "shutdown")
   @ConditionalOnMissingBean
-  public ScheduledExecutorService scheduledExecutorService() {
-    return Executors.newScheduledThreadPool(4);
+  public ScheduledExecutorService scheduledExecutorService(QubiSnmpProperties props) {
+    return Executors.newScheduledThreadPool(Math.max(1, props.getScheduler().getPool().getCoreSize()));
   }
 
-  @Bean
+  @Bean(destroyMethod = "close")
   @ConditionalOnMissingBean
-  public SnmpPollingRegistry snmpPollingRegistry(ScheduledExecutorService executor, SnmpClient client) {
-    return new SnmpPollingRegistryInMemory(executor, client);
+  public SnmpPollingRegistry snmpPollingRegistry(QubiSnmpProperties props, ScheduledExecutorService executor,
+                                                 SnmpClient client) {
+    var scheduler = props.getScheduler();
+    var mode = SnmpPollingRegistryInMemory.Mode.parse(scheduler.getMode());
+    var overrun = OverrunPolicy.parse(scheduler.getOverrun());
+    if ("timing-wheel".equalsIgnoreCase(scheduler.getType())) {
+      var wheel = new SnmpPollingRegistryTimingWheel(client, scheduler.getWheel().getTickMs(),
+          scheduler.getWheel().getSize(), mode, scheduler.getMaxConcurrent(), scheduler.getPool().getCoreSize());
+      wheel.setPhaseSpread(scheduler.isPhaseSpread());
+      wheel.setJitterMs(scheduler.getJitterMs());
+      wheel.setOverrunPolicy(overrun);
+      wheel.setMaxCatchUp(scheduler.getMaxCatchUp());
+      return wheel;
+    }
+    var registry = new SnmpPollingRegistryInMemory(executor, client, mode, scheduler.getMaxConcurrent());
+    registry.setPhaseSpread(scheduler.isPhaseSpread());
+    registry.setJitterMs(scheduler.getJitterMs());
+    registry.setOverrunPolicy(overrun);
+    registry.setMaxCatchUp(scheduler.getMaxCatchUp());
+    return registry;
   }
 
-  @Bean
+  @Bean(destroyMethod = "close")
+  @ConditionalOnMissingBean
+  public TrapBatchers trapBatchers() {
+    return new TrapBatchers();
+  }
+
+  @Bean(destroyMethod = "close")
+  @ConditionalOnMissingBean
+  @DependsOn("trapBatchers")
+  @ConditionalOnProperty(prefix = "qubi.snmp.traps.queue", name = "enabled", havingValue = "true", matchIfMissing = true)
+  public TrapQueue trapQueue(QubiSnmpProperties props, TrapDispatcher dispatcher,
+                             ObjectProvider<TrapKeyExtractor> keyExtractor) {
+    var queue = props.getTraps().getQueue();
+    // Partitioned lanes keep traps from one source in order; a TrapKeyExtractor bean overrides the key
+    TrapKeyExtractor key = queue.isPartitioned()
+            ? keyExtractor.getIfAvailable(() -> TrapKeyExtractor.SOURCE_HOST)
+            : null;
+    return new TrapQueue(dispatcher, queue.getCapacity(), queue.getWorkers(),
+            TrapQueue.Overflow.parse(queue.getOverflow()), key);
+  }
+
+  // Suppression summaries are logged and published as application events (@EventListener TrapSuppression)
+  @Bean(destroyMethod = "close")
+  @ConditionalOnMissingBean
+  @ConditionalOnProperty(prefix = "qubi.snmp.traps.storm", name = "enabled", havingValue = "true")
+  public TrapStormFilter trapStormFilter(QubiSnmpProperties props, TrapDispatcher dispatcher,
+                                         ObjectProvider<TrapSpool> spool, ObjectProvider<TrapQueue> queue,
+                                         ApplicationEventPublisher events) {
+    var storm = props.getTraps().getStorm();
+    var log = Logger.getLogger("qubi");
+    return new TrapStormFilter(
+            nextStage(dispatcher, spool, queue),
+            summary -> {
+              log.info("Suppressed " + summary.suppressed() + " traps (" + summary.reason() + ") from "
+                      + summary.source() + (summary.trapOid() != null ? " " + summary.trapOid() : ""));
+              events.publishEvent(summary);
+            },
+            storm.getWindowMs(),
+            storm.getTableSize(),
+            storm.getKeyOids(),
+            storm.getRatePerSecond(),
+            storm.getBurst(),
+            storm.getSourceTableSize());
+  }
+
+  // Appends on the receive thread; started by snmpInitializer once the listeners are registered
+  @Bean(destroyMethod = "close")
+  @ConditionalOnMissingBean
+  @ConditionalOnProperty(prefix = "qubi.snmp.traps.spool", name = "enabled", havingValue = "true")
+  public TrapSpool trapSpool(QubiSnmpProperties props, MibLookup mibLookup, TrapDispatcher dispatcher,
+                             ObjectProvider<TrapQueue> queue) throws IOException {
+    var spool = props.getTraps().getSpool();
+    return new TrapSpool(
+            Path.of(spool.getDirectory()),
+            spool.getSegmentSizeMb() * 1024 * 1024,
+            spool.getMaxSegments(),
+            spool.getForceIntervalMs(),
+            nextStage(dispatcher, queue),
+            () -> mibLookup);
+  }
+
+  // Stopped before the batchers are flushed and closed
+  @Bean(destroyMethod = "stop")
+  @DependsOn("trapBatchers")
   @ConditionalOnProperty(
           prefix = "qubi.snmp.traps",
           name = "enabled",
           havingValue = "true",
           matchIfMissing = true
   )
-  public SnmpTrapServer snmpTrapServer(QubiSnmpProperties props, MibLookup mibLookup, TrapDispatcher dispatcher) {
-    return new SnmpTrapServer(
+  public SnmpTrapServer snmpTrapServer(QubiSnmpProperties props, MibLookup mibLookup, TrapDispatcher dispatcher,
+                                       ObjectProvider<TrapStormFilter> storm, ObjectProvider<TrapSpool> spool,
+                                       ObjectProvider<TrapQueue> queue) {
+    var server = new SnmpTrapServer(
             props.getTraps().getPort(),
             props.getTraps().getSecurity(),
             () -> mibLookup,
-            dispatcher
+            dispatcher,
+            nextStage(dispatcher, storm, spool, queue)
             );
+    server.setSockets(props.getTraps().getSockets());
+    server.setReceiveBufferSize(props.getTraps().getReceiveBufferSize());
+    return server;
   }
 
   @Bean
@@ -97,6 +210,11 @@ public class QubiSnmpAutoConfiguration {
       }
 
       for (String name : ctx.getBeanDefinitionNames()) {
+        // Only instantiate beans whose type may declare listeners; unknown or abstract types are checked on the instance
+        Class<?> beanType = ctx.getType(name, false);
+        if (beanType != null && !isListenerCandidate(ClassUtils.getUserClass(beanType))) {
+          continue;
+        }
         Object bean;
         try {
           bean = ctx.getBean(name);
@@ -105,23 +223,41 @@ public class QubiSnmpAutoConfiguration {
         }
         Class<?> targetClass = ClassUtils.getUserClass(bean);
         for (var m : targetClass.getMethods()) {
-          if (m.isAnnotationPresent(SnmpTrapListener.class)
-                  && m.getParameterCount() == 1
-                  && TrapMessage.class.isAssignableFrom(m.getParameterTypes()[0])) {
-
-            var method = m;
-            dispatcher.add(msg -> {
-              try {
-                method.invoke(bean, msg);
-              } catch (Exception ex) {
-                log.log(Level.WARNING,
-                        "Error invoking @SnmpTrapListener " + targetClass.getSimpleName() + "#" + method.getName(),
-                        ex);
-              }
-            });
-            log.info("Registered @SnmpTrapListener -> "
-                    + targetClass.getSimpleName() + "#" + method.getName());
+          if (!m.isAnnotationPresent(SnmpTrapListener.class) || m.getParameterCount() != 1) {
+            continue;
           }
+          boolean single = TrapMessage.class.isAssignableFrom(m.getParameterTypes()[0]);
+          boolean batch = isTrapBatchParameter(m);
+          if (!single && !batch) {
+            continue;
+          }
+
+          var method = m;
+          var annotation = m.getAnnotation(SnmpTrapListener.class);
+          var filter = TrapFilter.of(annotation);
+          Consumer<Object> invoker = TrapListenerInvokers.bind(bean, method);
+          Consumer<Object> guarded = arg -> {
+            try {
+              invoker.accept(arg);
+            } catch (Exception ex) {
+              log.log(Level.WARNING,
+                      "Error invoking @SnmpTrapListener " + targetClass.getSimpleName() + "#" + method.getName(),
+                      ex);
+            }
+          };
+          String mode = "";
+          if (batch) {
+            var batchProps = ctx.getBean(QubiSnmpProperties.class).getTraps().getBatch();
+            int maxSize = annotation.maxBatchSize() > 0 ? annotation.maxBatchSize() : batchProps.getMaxSize();
+            long lingerMs = annotation.maxLingerMs() > 0 ? annotation.maxLingerMs() : batchProps.getMaxLingerMs();
+            dispatcher.add(ctx.getBean(TrapBatchers.class).create(guarded::accept, maxSize, lingerMs), filter);
+            mode = " (batch " + maxSize + ", " + lingerMs + "ms)";
+          } else {
+            dispatcher.add(guarded::accept, filter);
+          }
+          log.info("Registered @SnmpTrapListener -> "
+                  + targetClass.getSimpleName() + "#" + method.getName() + mode
+                  + (filter.isAny() ? "" : " " + filter));
         }
       }
       log.info("Trap listeners registered: " + dispatcher.size());
@@ -150,6 +286,9 @@ public class QubiSnmpAutoConfiguration {
         log.info("No polling registry found: " + e.getMessage());
       }
 
+      // Replay traps left in the spool by the previous run, now that listeners are in place
+      ctx.getBeanProvider(TrapSpool.class).ifAvailable(TrapSpool::start);
+
       try {
         SnmpTrapServer trapServer = ctx.getBean(SnmpTrapServer.class);
         trapServer.start();
@@ -159,4 +298,42 @@ public class QubiSnmpAutoConfiguration {
       }
     };
   }
-}
\ No newline at end of file
+
+  // Traps flow receive -> storm filter -> spool -> queue -> dispatcher; disabled stages are skipped
+  @SafeVarargs
+  private static Consumer<TrapMessage> nextStage(TrapDispatcher dispatcher,
+                                                 ObjectProvider<? extends Consumer<TrapMessage>>... stages) {
+    for (var stage : stages) {
+      Consumer<TrapMessage> next = stage.getIfAvailable();
+      if (next != null) {
+        return next;
+      }
+    }
+    return dispatcher;
+  }
+
+  // List<TrapMessage>, or a list of a supertype such as List<Object>
+  private static boolean isTrapBatchParameter(Method method) {
+    ResolvableType type = ResolvableType.forMethodParameter(method, 0);
+    if (type.resolve() != List.class) {
+      return false;
+    }
+    Class<?> element = type.getGeneric(0).resolve();
+    return element != null && element.isAssignableFrom(TrapMessage.class);
+  }
+
+  private static boolean isListenerCandidate(Class<?> type) {
+    if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+      return true;
+    }
+    if (!AnnotationUtils.isCandidateClass(type, SnmpTrapListener.class)) {
+      return false;
+    }
+    for (var m : type.getMethods()) {
+      if (m.isAnnotationPresent(SnmpTrapListener.class)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -2,6 +2,9 @@ package ar.qubi.snmp.autoconfigure;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @ConfigurationProperties(prefix = "qubi.snmp")
 public class QubiSnmpProperties {
   private boolean enabled = true;
@@ -29,7 +32,13 @@ public class QubiSnmpProperties {
     private boolean enabled = true;
     private int port = 9162;
     private int version = 2;
+    private int sockets = 1;
+    private int receiveBufferSize = 0;
     private Security security = new Security();
+    private Queue queue = new Queue();
+    private Batch batch = new Batch();
+    private Storm storm = new Storm();
+    private Spool spool = new Spool();
     
     public boolean isEnabled() { return enabled; }
     public void setEnabled(boolean enabled) { this.enabled = enabled; }
@@ -37,8 +46,89 @@ public class QubiSnmpProperties {
     public void setPort(int port) { this.port = port; }
     public int getVersion() { return version; }
     public void setVersion(int version) { this.version = version; }
+    public int getSockets() { return sockets; }
+    public void setSockets(int sockets) { this.sockets = sockets; }
+    public int getReceiveBufferSize() { return receiveBufferSize; }
+    public void setReceiveBufferSize(int receiveBufferSize) { this.receiveBufferSize = receiveBufferSize; }
     public Security getSecurity() { return security; }
     public void setSecurity(Security security) { this.security = security; }
+    public Queue getQueue() { return queue; }
+    public void setQueue(Queue queue) { this.queue = queue; }
+    public Batch getBatch() { return batch; }
+    public void setBatch(Batch batch) { this.batch = batch; }
+    public Storm getStorm() { return storm; }
+    public void setStorm(Storm storm) { this.storm = storm; }
+    public Spool getSpool() { return spool; }
+    public void setSpool(Spool spool) { this.spool = spool; }
+
+    public static class Queue {
+      private boolean enabled = true;
+      private int capacity = 10000;
+      private int workers = 1;
+      private String overflow = "drop";
+      private boolean partitioned = false;
+      public boolean isEnabled() { return enabled; }
+      public void setEnabled(boolean enabled) { this.enabled = enabled; }
+      public int getCapacity() { return capacity; }
+      public void setCapacity(int capacity) { this.capacity = capacity; }
+      public int getWorkers() { return workers; }
+      public void setWorkers(int workers) { this.workers = workers; }
+      public String getOverflow() { return overflow; }
+      public void setOverflow(String overflow) { this.overflow = overflow; }
+      public boolean isPartitioned() { return partitioned; }
+      public void setPartitioned(boolean partitioned) { this.partitioned = partitioned; }
+    }
+
+    public static class Batch {
+      private int maxSize = 500;
+      private long maxLingerMs = 200;
+      public int getMaxSize() { return maxSize; }
+      public void setMaxSize(int maxSize) { this.maxSize = maxSize; }
+      public long getMaxLingerMs() { return maxLingerMs; }
+      public void setMaxLingerMs(long maxLingerMs) { this.maxLingerMs = maxLingerMs; }
+    }
+
+    public static class Storm {
+      private boolean enabled = false;
+      private long windowMs = 10000;
+      private int tableSize = 8192;
+      private List<String> keyOids = new ArrayList<>(List.of("1.3.6.1.2.1.2.2.1.1"));
+      private double ratePerSecond = 0;
+      private int burst = 100;
+      private int sourceTableSize = 4096;
+      public boolean isEnabled() { return enabled; }
+      public void setEnabled(boolean enabled) { this.enabled = enabled; }
+      public long getWindowMs() { return windowMs; }
+      public void setWindowMs(long windowMs) { this.windowMs = windowMs; }
+      public int getTableSize() { return tableSize; }
+      public void setTableSize(int tableSize) { this.tableSize = tableSize; }
+      public List<String> getKeyOids() { return keyOids; }
+      public void setKeyOids(List<String> keyOids) { this.keyOids = keyOids; }
+      public double getRatePerSecond() { return ratePerSecond; }
+      public void setRatePerSecond(double ratePerSecond) { this.ratePerSecond = ratePerSecond; }
+      public int getBurst() { return burst; }
+      public void setBurst(int burst) { this.burst = burst; }
+      public int getSourceTableSize() { return sourceTableSize; }
+      public void setSourceTableSize(int sourceTableSize) { this.sourceTableSize = sourceTableSize; }
+    }
+
+    public static class Spool {
+      private boolean enabled = false;
+      private String directory = "trap-spool";
+      private int segmentSizeMb = 64;
+      private int maxSegments = 16;
+      private long forceIntervalMs = 0;
+      public boolean isEnabled() { return enabled; }
+      public void setEnabled(boolean enabled) { this.enabled = enabled; }
+      public String getDirectory() { return directory; }
+      public void setDirectory(String directory) { this.directory = directory; }
+      public int getSegmentSizeMb() { return segmentSizeMb; }
+      public void setSegmentSizeMb(int segmentSizeMb) { this.segmentSizeMb = segmentSizeMb; }
+      public int getMaxSegments() { return maxSegments; }
+      public void setMaxSegments(int maxSegments) { this.maxSegments = maxSegments; }
+      public long getForceIntervalMs() { return forceIntervalMs; }
+      public void setForceIntervalMs(long forceIntervalMs) { this.forceIntervalMs = forceIntervalMs; }
+    }
 
     public static class Security {
       private String communityString = "public";
@@ -72,10 +162,67 @@ public class QubiSnmpProperties {
   public static class Client {
     private int timeoutMs = 2000;
     private int retries = 1;
+    private int maxInFlight = 1000;
+    private int maxInFlightPerTarget = 2;
+    private int maxQueued = 10000;
+    private int targetCacheSize = 10000;
+    private int walkMaxRepetitions = 25;
+    private int transports = 1;
+    private int receiveBufferSize = 0;
+    private boolean transportAffinity = true;
+    private int dispatcherThreads = 0;
+    private AdaptiveTimeout adaptiveTimeout = new AdaptiveTimeout();
+    private Coalesce coalesce = new Coalesce();
     public int getTimeoutMs() { return timeoutMs; }
     public void setTimeoutMs(int timeoutMs) { this.timeoutMs = timeoutMs; }
     public int getRetries() { return retries; }
     public void setRetries(int retries) { this.retries = retries; }
+    public int getMaxInFlight() { return maxInFlight; }
+    public void setMaxInFlight(int maxInFlight) { this.maxInFlight = maxInFlight; }
+    public int getMaxInFlightPerTarget() { return maxInFlightPerTarget; }
+    public void setMaxInFlightPerTarget(int maxInFlightPerTarget) { this.maxInFlightPerTarget = maxInFlightPerTarget; }
+    public int getMaxQueued() { return maxQueued; }
+    public void setMaxQueued(int maxQueued) { this.maxQueued = maxQueued; }
+    public int getTargetCacheSize() { return targetCacheSize; }
+    public void setTargetCacheSize(int targetCacheSize) { this.targetCacheSize = targetCacheSize; }
+    public int getWalkMaxRepetitions() { return walkMaxRepetitions; }
+    public void setWalkMaxRepetitions(int walkMaxRepetitions) { this.walkMaxRepetitions = walkMaxRepetitions; }
+    public int getTransports() { return transports; }
+    public void setTransports(int transports) { this.transports = transports; }
+    public int getReceiveBufferSize() { return receiveBufferSize; }
+    public void setReceiveBufferSize(int receiveBufferSize) { this.receiveBufferSize = receiveBufferSize; }
+    public boolean isTransportAffinity() { return transportAffinity; }
+    public void setTransportAffinity(boolean transportAffinity) { this.transportAffinity = transportAffinity; }
+    public int getDispatcherThreads() { return dispatcherThreads; }
+    public void setDispatcherThreads(int dispatcherThreads) { this.dispatcherThreads = dispatcherThreads; }
+    public AdaptiveTimeout getAdaptiveTimeout() { return adaptiveTimeout; }
+    public void setAdaptiveTimeout(AdaptiveTimeout adaptiveTimeout) { this.adaptiveTimeout = adaptiveTimeout; }
+    public Coalesce getCoalesce() { return coalesce; }
+    public void setCoalesce(Coalesce coalesce) { this.coalesce = coalesce; }
+
+    public static class AdaptiveTimeout {
+      private boolean enabled = false;
+      private int minTimeoutMs = 200;
+      private int maxTimeoutMs = 10000;
+      public boolean isEnabled() { return enabled; }
+      public void setEnabled(boolean enabled) { this.enabled = enabled; }
+      public int getMinTimeoutMs() { return minTimeoutMs; }
+      public void setMinTimeoutMs(int minTimeoutMs) { this.minTimeoutMs = minTimeoutMs; }
+      public int getMaxTimeoutMs() { return maxTimeoutMs; }
+      public void setMaxTimeoutMs(int maxTimeoutMs) { this.maxTimeoutMs = maxTimeoutMs; }
+    }
+
+    public static class Coalesce {
+      private boolean enabled = false;
+      private int windowMs = 5;
+      private int maxVarbinds = 40;
+      public boolean isEnabled() { return enabled; }
+      public void setEnabled(boolean enabled) { this.enabled = enabled; }
+      public int getWindowMs() { return windowMs; }
+      public void setWindowMs(int windowMs) { this.windowMs = windowMs; }
+      public int getMaxVarbinds() { return maxVarbinds; }
+      public void setMaxVarbinds(int maxVarbinds) { this.maxVarbinds = maxVarbinds; }
+    }
   }
 
   public static class Mib {
@@ -86,21 +233,52 @@ public class QubiSnmpProperties {
 
   public static class Scheduler {
     private boolean enabled = true;
+    /** in-memory | timing-wheel */
+    private String type = "in-memory";
     private Pool pool = new Pool();
     private Log log = new Log();
+    private Wheel wheel = new Wheel();
     private String cron;
     private int fixedRateSeconds = 10;
+    /** auto | virtual | platform: where job executions run */
+    private String mode = "auto";
+    /** Executions allowed to run at once, 0 for no cap */
+    private int maxConcurrent = 0;
+    /** Start fixed-rate jobs at a stable per-job offset into their period */
+    private boolean phaseSpread = true;
+    /** Random delay of up to this many ms added to each fixed-rate run */
+    private long jitterMs = 0;
+    /** skip | coalesce | catch-up: runs that come due while the job is still running */
+    private String overrun = "skip";
+    /** Missed runs queued at most per job with catch-up */
+    private int maxCatchUp = 3;
     
     public boolean isEnabled() { return enabled; }
     public void setEnabled(boolean enabled) { this.enabled = enabled; }
+    public String getType() { return type; }
+    public void setType(String type) { this.type = type; }
     public Pool getPool() { return pool; }
     public void setPool(Pool pool) { this.pool = pool; }
     public Log getLog() { return log; }
     public void setLog(Log log) { this.log = log; }
+    public Wheel getWheel() { return wheel; }
+    public void setWheel(Wheel wheel) { this.wheel = wheel; }
     public String getCron() { return cron; }
     public void setCron(String cron) { this.cron = cron; }
     public int getFixedRateSeconds() { return fixedRateSeconds; }
     public void setFixedRateSeconds(int fixedRateSeconds) { this.fixedRateSeconds = fixedRateSeconds; }
+    public String getMode() { return mode; }
+    public void setMode(String mode) { this.mode = mode; }
+    public int getMaxConcurrent() { return maxConcurrent; }
+    public void setMaxConcurrent(int maxConcurrent) { this.maxConcurrent = maxConcurrent; }
+    public boolean isPhaseSpread() { return phaseSpread; }
+    public void setPhaseSpread(boolean phaseSpread) { this.phaseSpread = phaseSpread; }
+    public long getJitterMs() { return jitterMs; }
+    public void setJitterMs(long jitterMs) { this.jitterMs = jitterMs; }
+    public String getOverrun() { return overrun; }
+    public void setOverrun(String overrun) { this.overrun = overrun; }
+    public int getMaxCatchUp() { return maxCatchUp; }
+    public void setMaxCatchUp(int maxCatchUp) { this.maxCatchUp = maxCatchUp; }
 
     public static class Pool {
       private int coreSize = 4;
@@ -113,5 +291,15 @@ public class QubiSnmpProperties {
       public int getCapacity() { return capacity; }
       public void setCapacity(int capacity) { this.capacity = capacity; }
     }
+
+    public static class Wheel {
+      private long tickMs = 100;
+      /** Slots per revolution, rounded up to a power of two */
+      private int size = 512;
+      public long getTickMs() { return tickMs; }
+      public void setTickMs(long tickMs) { this.tickMs = tickMs; }
+      public int getSize() { return size; }
+      public void setSize(int size) { this.size = size; }
+    }
   }
 }